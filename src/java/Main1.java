@@ -1,3 +1,4 @@
+import lexer.MappedScanner;
 import lexer.Scanner;
 import lexer.Token;
 import lexer.Tokeniser;
@@ -88,7 +89,7 @@ public class Main1 {
 
         Scanner scanner;
         try {
-            scanner = new Scanner(inputFile);
+            scanner = new MappedScanner(inputFile);
         } catch (FileNotFoundException e) {
             System.out.println("File "+inputFile+" does not exist.");
             System.exit(FILE_NOT_FOUND);
@@ -1,5 +1,6 @@
 import ast.ASTPrinter;
 import ast.Program;
+import lexer.MappedScanner;
 import lexer.Scanner;
 import lexer.Token;
 import lexer.Tokeniser;
@@ -103,7 +104,7 @@ public class Main2 {
 
         Scanner scanner;
         try {
-            scanner = new Scanner(inputFile);
+            scanner = new MappedScanner(inputFile);
         } catch (FileNotFoundException e) {
             System.out.println("File "+inputFile+" does not exist.");
             System.exit(FILE_NOT_FOUND);
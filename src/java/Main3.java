@@ -2,6 +2,7 @@ import ast.ASTPrinter;
 import ast.Program;
 import gen.CodeGenerator;
 import gen.asm.AssemblyPass;
+import lexer.MappedScanner;
 import lexer.Scanner;
 import lexer.Token;
 import lexer.Tokeniser;
@@ -110,7 +111,7 @@ public class Main3 {
 
         Scanner scanner;
         try {
-            scanner = new Scanner(inputFile);
+            scanner = new MappedScanner(inputFile);
         } catch (FileNotFoundException e) {
             System.out.println("File "+inputFile+" does not exist.");
             System.exit(FILE_NOT_FOUND);
@@ -4,8 +4,10 @@ import gen.CodeGenerator;
 import gen.asm.AssemblyParser;
 import gen.asm.AssemblyPass;
 import gen.asm.AssemblyProgram;
-import lexer.Scanner;
+import lexer.MappedScanner;
+import lexer.PipelinedTokeniser;
 import lexer.Token;
+import lexer.TokenStream;
 import lexer.Tokeniser;
 import parser.Parser;
 import regalloc.GraphColouringRegAlloc;
@@ -35,14 +37,15 @@ public class Main4 {
     }
 
     private enum RegAllocMode {
-        NONE, NAIVE, GRAPH_COLOURING
+        NONE, NAIVE, GRAPH_COLOURING, ITERATED_COALESCING, LINEAR_SCAN
     }
 
 
     private static void usage() {
-        System.out.println("Usage: java "+ Main4.class.getSimpleName()+" pass inputfile [outputfile]");
-        System.out.println("where pass is either: -lexer, -parser, -ast, -sem, -gen [naive|colour], -regalloc naive|colour");
+        System.out.println("Usage: java "+ Main4.class.getSimpleName()+" [-pipeline] pass inputfile [outputfile]");
+        System.out.println("where pass is either: -lexer, -parser, -ast, -sem, -gen [naive|colour|irc|linear], -regalloc naive|colour|irc|linear");
         System.out.println("if -ast, -gen or -regalloc is chosen, the output file must be specified");
+        System.out.println("-pipeline runs the lexer on its own thread, ahead of the parser");
         System.exit(-1);
     }
 
@@ -84,6 +87,12 @@ public class Main4 {
         Mode mode = null;
         RegAllocMode regAllocMode = RegAllocMode.NONE;
         int curArgCnt = 0;
+        boolean pipelined = false;
+        if (args[curArgCnt].equals("-pipeline")) {
+            pipelined = true;
+            curArgCnt++;
+            ensureArgExists(args, curArgCnt);
+        }
         switch (args[curArgCnt]) {
             case "-lexer":
                 mode = Mode.LEXER;
@@ -94,7 +103,7 @@ public class Main4 {
                 curArgCnt++;
                 break;
             case "-ast":
-                if (args.length < 3)
+                if (args.length < curArgCnt + 3)
                     usage();
                 mode = Mode.AST;
                 curArgCnt++;
@@ -113,6 +122,12 @@ public class Main4 {
                 } else if (args[curArgCnt].equals("colour")) {
                     regAllocMode = RegAllocMode.GRAPH_COLOURING;
                     curArgCnt++;
+                } else if (args[curArgCnt].equals("irc")) {
+                    regAllocMode = RegAllocMode.ITERATED_COALESCING;
+                    curArgCnt++;
+                } else if (args[curArgCnt].equals("linear")) {
+                    regAllocMode = RegAllocMode.LINEAR_SCAN;
+                    curArgCnt++;
                 }
                 break;
             case "-regalloc":
@@ -125,6 +140,12 @@ public class Main4 {
                 } else if (args[curArgCnt].equals("colour")) {
                     regAllocMode = RegAllocMode.GRAPH_COLOURING;
                     curArgCnt++;
+                } else if (args[curArgCnt].equals("irc")) {
+                    regAllocMode = RegAllocMode.ITERATED_COALESCING;
+                    curArgCnt++;
+                } else if (args[curArgCnt].equals("linear")) {
+                    regAllocMode = RegAllocMode.LINEAR_SCAN;
+                    curArgCnt++;
                 }
                 break;
             default:
@@ -136,16 +157,16 @@ public class Main4 {
         File inputFile = new File(args[curArgCnt]);
         curArgCnt++;
 
-        Scanner scanner;
+        MappedScanner scanner;
         try {
-            scanner = new Scanner(inputFile);
+            scanner = new MappedScanner(inputFile);
         } catch (FileNotFoundException e) {
             System.out.println("File "+inputFile+" does not exist.");
             System.exit(FILE_NOT_FOUND);
             return;
         }
 
-        Tokeniser tokeniser = new Tokeniser(scanner);
+        Tokeniser tokeniser = pipelined ? PipelinedTokeniser.start(scanner) : new Tokeniser(scanner);
         if (mode == Mode.LEXER) {
             for (Token t = tokeniser.nextToken(); t.category != Token.Category.EOF; t = tokeniser.nextToken())
                 System.out.println(t);
@@ -161,7 +182,7 @@ public class Main4 {
         }
 
         else if (mode == Mode.PARSER || mode == Mode.AST || mode == Mode.SEMANTICANALYSIS || mode == Mode.GEN) {
-            Parser parser = new Parser(tokeniser);
+            Parser parser = pipelined ? new Parser(tokeniser) : new Parser(new TokenStream(tokeniser, scanner));
             Program programAst = parser.parse();
 
             if (tokeniser.hasErrors()) {
@@ -224,6 +245,8 @@ public class Main4 {
                 case NONE -> AssemblyPass.NOP;
                 case NAIVE -> NaiveRegAlloc.INSTANCE;
                 case GRAPH_COLOURING -> GraphColouringRegAlloc.INSTANCE;
+                case ITERATED_COALESCING -> GraphColouringRegAlloc.COALESCING;
+                case LINEAR_SCAN -> GraphColouringRegAlloc.LINEAR_SCAN;
             };
             CodeGenerator codegen = new CodeGenerator(regAlloc);
 
@@ -250,6 +273,8 @@ public class Main4 {
                 case NONE -> AssemblyPass.NOP;
                 case NAIVE -> NaiveRegAlloc.INSTANCE;
                 case GRAPH_COLOURING -> GraphColouringRegAlloc.INSTANCE;
+                case ITERATED_COALESCING -> GraphColouringRegAlloc.COALESCING;
+                case LINEAR_SCAN -> GraphColouringRegAlloc.LINEAR_SCAN;
             };
 
             AssemblyProgram program;
@@ -9,4 +9,14 @@ public sealed interface  ASTNode
      * Returns all the children of this ASTNode.
      * */
     abstract List<ASTNode> children();
+
+    /**
+     * Returns the number of children of this ASTNode, without building the list returned by children().
+     */
+    int childCount();
+
+    /**
+     * Returns the i^th child of this ASTNode, in the same order as children().
+     */
+    ASTNode child(int i);
 }
@@ -81,10 +81,10 @@ public class ASTPrinter {
 
             default -> {
                 String delimiter = "";
-                for (ASTNode child : node.children()) {
+                for (int i = 0; i < node.childCount(); i++) {
                     writer.print(delimiter);
                     delimiter = ",";
-                    visit(child);
+                    visit(node.child(i));
                 }
             }
         }
@@ -19,4 +19,18 @@ public final class ArrayAccessExpr extends Expr {
         children.add(index);
         return children;
     }
+
+    @Override
+    public int childCount() {
+        return 2;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return switch (i) {
+            case 0 -> array;
+            case 1 -> index;
+            default -> throw new IndexOutOfBoundsException(i);
+        };
+    }
 }
@@ -20,6 +20,19 @@ public final class ArrayType implements Type {
         return children;
     }
 
+    @Override
+    public int childCount() {
+        return 1;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return switch (i) {
+            case 0 -> type;
+            default -> throw new IndexOutOfBoundsException(i);
+        };
+    }
+
     @Override
     public boolean equals(Object obj) {
         return (obj instanceof ArrayType that)
@@ -19,4 +19,18 @@ public final class Assign extends Expr {
         children.add(rhs);
         return children;
     }
+
+    @Override
+    public int childCount() {
+        return 2;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return switch (i) {
+            case 0 -> lhs;
+            case 1 -> rhs;
+            default -> throw new IndexOutOfBoundsException(i);
+        };
+    }
 }
@@ -10,6 +10,16 @@ public enum BaseType implements Type {
         return new ArrayList<ASTNode>();
     }
 
+    @Override
+    public int childCount() {
+        return 0;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        throw new IndexOutOfBoundsException(i);
+    }
+
     @Override
     public String toString() {
         return this.name();
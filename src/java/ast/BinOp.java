@@ -22,4 +22,19 @@ public final class BinOp extends Expr {
         children.add(rhs);
         return children;
     }
+
+    @Override
+    public int childCount() {
+        return 3;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return switch (i) {
+            case 0 -> lhs;
+            case 1 -> op;
+            case 2 -> rhs;
+            default -> throw new IndexOutOfBoundsException(i);
+        };
+    }
 }
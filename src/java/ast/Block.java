@@ -21,4 +21,14 @@ public final class Block extends Stmt {
         return children;
     }
 
+    @Override
+    public int childCount() {
+        return vds.size() + stmts.size();
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return i < vds.size() ? vds.get(i) : stmts.get(i - vds.size());
+    }
+
 }
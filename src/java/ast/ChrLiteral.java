@@ -15,4 +15,14 @@ public final class ChrLiteral extends Expr {
     public List<ASTNode> children() {
         return new ArrayList<>();
     }
+
+    @Override
+    public int childCount() {
+        return 0;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        throw new IndexOutOfBoundsException(i);
+    }
 }
@@ -30,5 +30,26 @@ public final class ClassDecl extends Decl {
         children.addAll(functions);
         return children;
     }
+
+    @Override
+    public int childCount() {
+        return (extendsType != null ? 2 : 1) + fields.size() + functions.size();
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        if (i == 0) {
+            return type;
+        }
+        int firstField = 1;
+        if (extendsType != null) {
+            if (i == 1) {
+                return extendsType;
+            }
+            firstField = 2;
+        }
+        i -= firstField;
+        return i < fields.size() ? fields.get(i) : functions.get(i - fields.size());
+    }
 }
 
@@ -15,6 +15,16 @@ public final class ClassType implements Type {
         return new ArrayList<>();
     }
 
+    @Override
+    public int childCount() {
+        return 0;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        throw new IndexOutOfBoundsException(i);
+    }
+
     @Override
     public boolean equals(Object obj) {
         return (obj instanceof ClassType that)
@@ -8,4 +8,14 @@ public final class Continue extends Stmt {
     public List<ASTNode> children() {
         return new ArrayList<>();
     }
+
+    @Override
+    public int childCount() {
+        return 0;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        throw new IndexOutOfBoundsException(i);
+    }
 }
@@ -18,4 +18,17 @@ public final class ExprStmt extends Stmt {
         return children;
     }
 
+    @Override
+    public int childCount() {
+        return 1;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return switch (i) {
+            case 0 -> expr;
+            default -> throw new IndexOutOfBoundsException(i);
+        };
+    }
+
 }
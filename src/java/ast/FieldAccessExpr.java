@@ -19,4 +19,17 @@ public final class FieldAccessExpr extends Expr {
         children.add(structOrClass);
         return children;
     }
+
+    @Override
+    public int childCount() {
+        return 1;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return switch (i) {
+            case 0 -> structOrClass;
+            default -> throw new IndexOutOfBoundsException(i);
+        };
+    }
 }
@@ -17,4 +17,14 @@ public final class FunCallExpr extends Expr {
     public List<ASTNode> children() {
         return new ArrayList<>(args);
     }
+
+    @Override
+    public int childCount() {
+        return args.size();
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return args.get(i);
+    }
 }
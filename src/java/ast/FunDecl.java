@@ -19,4 +19,14 @@ public final class FunDecl extends Decl {
         return children;
     }
 
+    @Override
+    public int childCount() {
+        return 1 + params.size();
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return i == 0 ? type : params.get(i - 1);
+    }
+
 }
@@ -27,4 +27,20 @@ public final class FunDef extends Decl {
         return children;
     }
 
+    @Override
+    public int childCount() {
+        return 2 + params.size();
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        if (i == 0) {
+            return type;
+        }
+        if (i == params.size() + 1) {
+            return block;
+        }
+        return params.get(i - 1);
+    }
+
 }
@@ -25,4 +25,24 @@ public final class If extends Stmt {
         return children;
     }
 
+    @Override
+    public int childCount() {
+        return elseStatement != null ? 3 : 2;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return switch (i) {
+            case 0 -> condition;
+            case 1 -> ifStatement;
+            case 2 -> {
+                if (elseStatement == null) {
+                    throw new IndexOutOfBoundsException(i);
+                }
+                yield elseStatement;
+            }
+            default -> throw new IndexOutOfBoundsException(i);
+        };
+    }
+
 }
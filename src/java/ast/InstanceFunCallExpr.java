@@ -20,5 +20,19 @@ public final class InstanceFunCallExpr extends Expr {
         return children;
     }
 
+    @Override
+    public int childCount() {
+        return 2;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return switch (i) {
+            case 0 -> classInstance;
+            case 1 -> classFunction;
+            default -> throw new IndexOutOfBoundsException(i);
+        };
+    }
+
 }
 
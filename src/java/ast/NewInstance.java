@@ -17,5 +17,18 @@ public final class NewInstance extends Expr {
         children.add(newInstanceType);
         return children;
     }
+
+    @Override
+    public int childCount() {
+        return 1;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return switch (i) {
+            case 0 -> newInstanceType;
+            default -> throw new IndexOutOfBoundsException(i);
+        };
+    }
 }
 
@@ -11,4 +11,14 @@ public enum Op implements ASTNode {
     public List<ASTNode> children() {
         return new ArrayList<>();
     }
+
+    @Override
+    public int childCount() {
+        return 0;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        throw new IndexOutOfBoundsException(i);
+    }
 }
@@ -16,6 +16,16 @@ public final class Program implements ASTNode {
         return new ArrayList<>(decls);
     }
 
+    @Override
+    public int childCount() {
+        return decls.size();
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return decls.get(i);
+    }
+
     public static List<FunDef> builtInFuncDecls() {
         List<FunDef> funDefs = new ArrayList<>();
         {
@@ -20,4 +20,17 @@ public final class Return extends Stmt {
         return children;
     }
 
+    @Override
+    public int childCount() {
+        return returnExpression != null ? 1 : 0;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        if (i != 0 || returnExpression == null) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return returnExpression;
+    }
+
 }
@@ -17,4 +17,17 @@ public final class SizeOfExpr extends Expr {
         children.add(innerType);
         return children;
     }
+
+    @Override
+    public int childCount() {
+        return 1;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return switch (i) {
+            case 0 -> innerType;
+            default -> throw new IndexOutOfBoundsException(i);
+        };
+    }
 }
@@ -0,0 +1,51 @@
+package ast;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The layout of a structure in memory: its size, its alignment and the offset of each field.
+ * Each field is aligned on its own alignment, and the size is padded to the largest of them.
+ * It is computed once per structure declaration by the type analyser.
+ */
+public final class StructLayout {
+
+    public final int size;
+    public final int alignment;
+    private final Map<String, Integer> fieldOffsets = new HashMap<>();
+
+    public StructLayout(List<VarDecl> fields) {
+        int totalSize = 0;
+        int maxAlignment = 1;
+        for (VarDecl field : fields) {
+            int fieldAlignment = field.type.alignment();
+
+            // Check if padding is needed
+            if (totalSize % fieldAlignment != 0) {
+                totalSize += fieldAlignment - (totalSize % fieldAlignment);
+            }
+
+            // Add the field
+            fieldOffsets.put(field.name, totalSize);
+            totalSize += field.type.size();
+            maxAlignment = Math.max(maxAlignment, fieldAlignment);
+        }
+
+        // Pad to the largest field alignment
+        if (totalSize % maxAlignment != 0) {
+            totalSize += maxAlignment - (totalSize % maxAlignment);
+        }
+
+        this.size = totalSize;
+        this.alignment = maxAlignment;
+    }
+
+    public int offsetOf(String fieldName) {
+        Integer offset = fieldOffsets.get(fieldName);
+        if (offset == null) {
+            throw new IllegalStateException("No field " + fieldName + " - Should not occur");
+        }
+        return offset;
+    }
+}
@@ -17,6 +17,16 @@ public final class StructType implements Type {
         return new ArrayList<>();
     }
 
+    @Override
+    public int childCount() {
+        return 0;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        throw new IndexOutOfBoundsException(i);
+    }
+
     @Override
     public boolean equals(Object obj) {
         return (obj instanceof StructType that)
@@ -30,45 +40,18 @@ public final class StructType implements Type {
 
     @Override
     public int size() {
-        if (std == null) {
-            throw new IllegalStateException("Error should be caught by type analyser");
-        }
-        int totalSize = 0;
-        int maxAlignment = 0;
-        for (VarDecl field : std.fields) {
-            int fieldSize = field.type.size();
-            int fieldAlignment = field.type.alignment();
-
-            // Check if padding is needed
-            if (totalSize % fieldAlignment != 0) {
-                totalSize += fieldAlignment - (totalSize % fieldAlignment);
-            }
-
-            // Add the field
-            totalSize += fieldSize;
-            maxAlignment = Math.max(maxAlignment, fieldAlignment);
-        }
-
-        // Pad to the largest field alignment
-        if (totalSize % maxAlignment != 0) {
-            totalSize += maxAlignment - (totalSize % maxAlignment);
-        }
-
-        return totalSize;
+        return layout().size;
     }
 
-
     @Override
     public int alignment() {
-        if (std == null) {
+        return layout().alignment;
+    }
+
+    public StructLayout layout() {
+        if (std == null || std.layout == null) {
             throw new IllegalStateException("Error should be caught by type analyser");
         }
-        int maxAlignment = 0;
-        for (VarDecl field : std.fields) {
-            maxAlignment = Math.max(maxAlignment, field.type.alignment());
-        }
-        return maxAlignment;
+        return std.layout;
     }
-
-
 }
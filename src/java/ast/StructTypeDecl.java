@@ -5,6 +5,7 @@ import java.util.List;
 
 public final class StructTypeDecl extends Decl {
     public final List<VarDecl> fields;
+    public StructLayout layout; // filled in by type analyser
 
     public StructTypeDecl(StructType type, List<VarDecl> fields) {
         this.type = type;
@@ -20,4 +21,14 @@ public final class StructTypeDecl extends Decl {
         return children;
     }
 
+    @Override
+    public int childCount() {
+        return 1 + fields.size();
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return i == 0 ? type : fields.get(i - 1);
+    }
+
 }
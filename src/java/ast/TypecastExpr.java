@@ -20,4 +20,18 @@ public final class TypecastExpr extends Expr {
         children.add(expr);
         return children;
     }
+
+    @Override
+    public int childCount() {
+        return 2;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return switch (i) {
+            case 0 -> typecastType;
+            case 1 -> expr;
+            default -> throw new IndexOutOfBoundsException(i);
+        };
+    }
 }
@@ -17,4 +17,17 @@ public final class ValueAtExpr extends Expr {
         children.add(expr);
         return children;
     }
+
+    @Override
+    public int childCount() {
+        return 1;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return switch (i) {
+            case 0 -> expr;
+            default -> throw new IndexOutOfBoundsException(i);
+        };
+    }
 }
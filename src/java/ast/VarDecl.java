@@ -25,6 +25,19 @@ public final class VarDecl extends Decl {
         return children;
     }
 
+    @Override
+    public int childCount() {
+        return 1;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return switch (i) {
+            case 0 -> type;
+            default -> throw new IndexOutOfBoundsException(i);
+        };
+    }
+
     public boolean hasVirtualReg() {
         return virtualReg != null;
     }
@@ -17,4 +17,14 @@ public final class VarExpr extends Expr {
         return new ArrayList<>();
     }
 
+    @Override
+    public int childCount() {
+        return 0;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        throw new IndexOutOfBoundsException(i);
+    }
+
 }
@@ -20,4 +20,18 @@ public final class While extends Stmt {
         children.add(statement);
         return children;
     }
+
+    @Override
+    public int childCount() {
+        return 2;
+    }
+
+    @Override
+    public ASTNode child(int i) {
+        return switch (i) {
+            case 0 -> condition;
+            case 1 -> statement;
+            default -> throw new IndexOutOfBoundsException(i);
+        };
+    }
 }
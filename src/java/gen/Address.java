@@ -0,0 +1,21 @@
+package gen;
+
+import gen.asm.Register;
+
+/**
+ * The address of an expression as a base register plus a constant displacement, which fits in the 16-bit immediate of
+ * a load or store. Locals are at a displacement from $fp, fields at a displacement from their structure.
+ */
+public record Address(Register base, int offset) {
+
+    /**
+     * Returns this address moved by delta bytes, or null if the displacement would not fit in an immediate anymore.
+     */
+    public Address plus(long delta) {
+        long moved = offset + delta;
+        if (moved < Short.MIN_VALUE || moved > Short.MAX_VALUE) {
+            return null;
+        }
+        return new Address(base, (int) moved);
+    }
+}
@@ -0,0 +1,136 @@
+package gen;
+
+import gen.asm.*;
+
+/**
+ * Emits copies of structures from one address to another.
+ *
+ * A small structure is copied with unrolled moves: whole words when it is word aligned, then the remaining bytes one at
+ * a time. A larger one is copied by calling a memcpy routine emitted once in the program, which moves four words per
+ * iteration. The routine only writes $a0-$a2 and $t0-$t3, so the register allocator keeps the other registers live
+ * across its calls.
+ */
+final class BlockCopy {
+
+    /**
+     * The most loads and stores pairs a copy is unrolled into, 16 words or 16 bytes.
+     */
+    private static final int MAX_UNROLLED_MOVES = 16;
+
+    static final Label MEMCPY = Label.get("memcpy");
+
+    private BlockCopy() {}
+
+    /**
+     * Returns whether copying size bytes with the given alignment calls the memcpy routine, and so writes $ra.
+     */
+    static boolean callsMemcpy(int size, int alignment) {
+        return moves(size, alignment) > MAX_UNROLLED_MOVES;
+    }
+
+    /**
+     * Emits code copying size bytes from src to dst, both aligned on alignment bytes.
+     */
+    static void emitCopy(AssemblyProgram.TextSection text, Address dst, Address src, int size, int alignment) {
+        if (callsMemcpy(size, alignment)) {
+            text.emit(OpCode.ADDI, Register.Arch.a0, dst.base(), dst.offset());
+            text.emit(OpCode.ADDI, Register.Arch.a1, src.base(), src.offset());
+            text.emit(OpCode.LI, Register.Arch.a2, size);
+            text.emit(OpCode.JAL, MEMCPY);
+            return;
+        }
+
+        dst = reaching(text, dst, size);
+        src = reaching(text, src, size);
+        Register temp = Register.Virtual.create();
+        int words = alignment % 4 == 0 ? size / 4 : 0;
+        for (int i = 0; i < words * 4; i += 4) {
+            text.emit(OpCode.LW, temp, src.base(), src.offset() + i);
+            text.emit(OpCode.SW, temp, dst.base(), dst.offset() + i);
+        }
+        for (int i = words * 4; i < size; i++) {
+            text.emit(OpCode.LB, temp, src.base(), src.offset() + i);
+            text.emit(OpCode.SB, temp, dst.base(), dst.offset() + i);
+        }
+    }
+
+    /**
+     * Emits the memcpy routine if the program calls it: $a0 is the destination, $a1 the source and $a2 the size.
+     * Words are moved while both addresses are word aligned, then bytes.
+     */
+    static void emitMemcpyIfUsed(AssemblyProgram asmProg) {
+        boolean used = asmProg.textSections.stream().flatMap(section -> section.items.stream())
+                .anyMatch(item -> item instanceof Instruction.Jump jump && jump.label == MEMCPY);
+        if (!used) {
+            return;
+        }
+
+        AssemblyProgram.TextSection text = asmProg.emitNewTextSection();
+        Label blocksLabel = Label.create("MEMCPY_BLOCKS");
+        Label wordsLabel = Label.create("MEMCPY_WORDS");
+        Label bytesLabel = Label.create("MEMCPY_BYTES");
+        Label endLabel = Label.create("MEMCPY_END");
+        Register.Arch dst = Register.Arch.a0;
+        Register.Arch src = Register.Arch.a1;
+        Register.Arch size = Register.Arch.a2;
+        Register.Arch[] temps = {Register.Arch.t0, Register.Arch.t1, Register.Arch.t2, Register.Arch.t3};
+
+        text.emit(MEMCPY);
+        text.emit(OpCode.OR, temps[0], dst, src);
+        text.emit(OpCode.ANDI, temps[0], temps[0], 3);
+        text.emit(OpCode.BNEZ, temps[0], bytesLabel);
+
+        text.emit(OpCode.SLTI, temps[0], size, 16);
+        text.emit(OpCode.BNEZ, temps[0], wordsLabel);
+        text.emit(blocksLabel);
+        for (int i = 0; i < temps.length; i++) {
+            text.emit(OpCode.LW, temps[i], src, 4 * i);
+        }
+        for (int i = 0; i < temps.length; i++) {
+            text.emit(OpCode.SW, temps[i], dst, 4 * i);
+        }
+        text.emit(OpCode.ADDIU, dst, dst, 16);
+        text.emit(OpCode.ADDIU, src, src, 16);
+        text.emit(OpCode.ADDIU, size, size, -16);
+        text.emit(OpCode.SLTI, temps[0], size, 16);
+        text.emit(OpCode.BEQZ, temps[0], blocksLabel);
+
+        text.emit(wordsLabel);
+        text.emit(OpCode.SLTI, temps[0], size, 4);
+        text.emit(OpCode.BNEZ, temps[0], bytesLabel);
+        text.emit(OpCode.LW, temps[0], src, 0);
+        text.emit(OpCode.SW, temps[0], dst, 0);
+        text.emit(OpCode.ADDIU, dst, dst, 4);
+        text.emit(OpCode.ADDIU, src, src, 4);
+        text.emit(OpCode.ADDIU, size, size, -4);
+        text.emit(OpCode.J, wordsLabel);
+
+        text.emit(bytesLabel);
+        text.emit(OpCode.BEQZ, size, endLabel);
+        text.emit(OpCode.LB, temps[0], src, 0);
+        text.emit(OpCode.SB, temps[0], dst, 0);
+        text.emit(OpCode.ADDIU, dst, dst, 1);
+        text.emit(OpCode.ADDIU, src, src, 1);
+        text.emit(OpCode.ADDIU, size, size, -1);
+        text.emit(OpCode.J, bytesLabel);
+
+        text.emit(endLabel);
+        text.emit(OpCode.JR, Register.Arch.ra);
+    }
+
+    private static int moves(int size, int alignment) {
+        return alignment % 4 == 0 ? size / 4 + size % 4 : size;
+    }
+
+    /**
+     * Returns an address whose size following bytes can all be reached with an immediate displacement.
+     */
+    private static Address reaching(AssemblyProgram.TextSection text, Address address, int size) {
+        if (address.plus(size) != null) {
+            return address;
+        }
+        Register baseReg = Register.Virtual.create();
+        text.emit(OpCode.ADDI, baseReg, address.base(), address.offset());
+        return new Address(baseReg, 0);
+    }
+}
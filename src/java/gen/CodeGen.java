@@ -1,8 +1,76 @@
 package gen;
 
+import ast.*;
 import gen.asm.AssemblyProgram;
+import gen.asm.Register;
+
+import java.util.List;
+import java.util.Map;
 
 public abstract class CodeGen {
     protected AssemblyProgram asmProg;
 
+    /**
+     * The library functions, each lowered to the system call of the given number: the argument, if any, is passed in
+     * $a0 and the result returned in $v0.
+     */
+    protected static final Map<String, Integer> LIBRARY_SYSCALLS = Map.of(
+            "print_i", 1,
+            "print_s", 4,
+            "read_i", 5,
+            "mcmalloc", 9,
+            "print_c", 11,
+            "read_c", 12
+    );
+
+    protected static boolean isLibraryFunction(String functionName) {
+        return LIBRARY_SYSCALLS.containsKey(functionName);
+    }
+
+    /**
+     * Registers passing the first scalar arguments of a call. Scalar results are returned in $v0.
+     */
+    protected static final Register.Arch[] ARG_REGS = {
+            Register.Arch.a0, Register.Arch.a1, Register.Arch.a2, Register.Arch.a3
+    };
+
+    /**
+     * Structures are passed and returned on the stack, every other value fits in a register.
+     */
+    protected static boolean isPassedInRegister(Type type) {
+        return !(type instanceof StructType);
+    }
+
+    /**
+     * Returns the index in ARG_REGS of the register passing each parameter, or -1 for the parameters passed on the
+     * stack: structures, and the scalars after the first four.
+     */
+    protected static int[] argumentRegisters(List<VarDecl> params) {
+        int[] argRegs = new int[params.size()];
+        int next = 0;
+        for (int k = 0; k < params.size(); k++) {
+            argRegs[k] = isPassedInRegister(params.get(k).type) && next < ARG_REGS.length ? next++ : -1;
+        }
+        return argRegs;
+    }
+
+    /**
+     * Returns the value of an expression known without evaluating it: a literal or the size of a type, or null if e is
+     * not one. Such an expression has no side effect.
+     */
+    protected static Integer constantValue(Expr e) {
+        return switch (e) {
+            case IntLiteral i -> i.value;
+            case ChrLiteral c -> (int) c.c;
+            case SizeOfExpr s -> s.innerType.size();
+            default -> null;
+        };
+    }
+
+    /**
+     * Rounds a size up to a whole number of words, as everything on the stack is word aligned.
+     */
+    protected static int wordAligned(int size) {
+        return size % 4 == 0 ? size : size + 4 - size % 4;
+    }
 }
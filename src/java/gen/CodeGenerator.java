@@ -5,6 +5,7 @@ package gen;
 import ast.Program;
 import gen.asm.AssemblyPass;
 import gen.asm.AssemblyProgram;
+import peephole.PeepholeOptimiser;
 import regalloc.NaiveRegAlloc;
 
 import java.io.File;
@@ -23,7 +24,7 @@ public final class CodeGenerator {
      * instance of your register allocator pass for part 4.
      */
     public CodeGenerator() {
-        this.registerAllocator = NaiveRegAlloc.INSTANCE;
+        this(NaiveRegAlloc.INSTANCE);
     }
 
     /**
@@ -32,7 +33,18 @@ public final class CodeGenerator {
      * @param registerAllocator The register allocator to use.
      */
     public CodeGenerator(AssemblyPass registerAllocator) {
+        this(registerAllocator, new PeepholeOptimiser());
+    }
+
+    /**
+     * Creates a code generator that uses a custom register allocator and optimiser.
+     *
+     * @param registerAllocator The register allocator to use.
+     * @param optimiser The pass run both before and after register allocation, {@link AssemblyPass#NOP} for none.
+     */
+    public CodeGenerator(AssemblyPass registerAllocator, AssemblyPass optimiser) {
         this.registerAllocator = registerAllocator;
+        this.optimiser = optimiser;
     }
 
     /**
@@ -40,6 +52,11 @@ public final class CodeGenerator {
      */
     public final AssemblyPass registerAllocator;
 
+    /**
+     * The peephole optimiser this code generator uses.
+     */
+    public final AssemblyPass optimiser;
+
     /**
      * Takes a Mini C program as an AST, turns it into a MIPS program, and writes a textual representation of that
      * program to a file.
@@ -55,8 +72,12 @@ public final class CodeGenerator {
         ProgramCodeGen progGen = new ProgramCodeGen(asmProgWithVirtualRegs);
         progGen.generate(astProgram);
 
-        // run the register allocator which remove the virtual registers (unless there is no register allocator)
-        AssemblyProgram asmProgAfterRegAlloc = registerAllocator.apply(asmProgWithVirtualRegs);
+        // clean up the templates of the code generator
+        AssemblyProgram asmProgOptimised = optimiser.apply(asmProgWithVirtualRegs);
+
+        // run the register allocator which remove the virtual registers (unless there is no register allocator),
+        // then clean up the spill code and moves it leaves
+        AssemblyProgram asmProgAfterRegAlloc = optimiser.apply(registerAllocator.apply(asmProgOptimised));
 
         // print the assembly program
         PrintWriter writer = new PrintWriter(outputFile);
@@ -0,0 +1,175 @@
+package gen;
+
+import ast.*;
+import gen.asm.AssemblyProgram;
+import gen.asm.Label;
+import gen.asm.OpCode;
+import gen.asm.Register;
+
+/**
+ * Generates code to branch on a condition, without computing its value as 0 or 1 in a register.
+ *
+ * Comparisons become a BEQ or BNE, a branch on the result of an SLT, or a branch comparing with zero when one side is
+ * the literal 0. Other literals are folded into the immediate of an XORI or SLTI tested against zero. Short-circuit
+ * operators become chains of branches, each operand jumping out as soon as it decides the outcome.
+ */
+public class CondCodeGen extends CodeGen {
+
+    public CondCodeGen(AssemblyProgram asmProg) {
+        this.asmProg = asmProg;
+    }
+
+    /**
+     * Emits code jumping to target if the condition is true (non-zero), or false if jumpIf is false, and falling
+     * through otherwise.
+     */
+    public void branch(Expr cond, boolean jumpIf, Label target) {
+        AssemblyProgram.TextSection text = asmProg.getCurrentTextSection();
+        switch (cond) {
+            case IntLiteral i -> {
+                if ((i.value != 0) == jumpIf) {
+                    text.emit(OpCode.J, target);
+                }
+            }
+
+            case BinOp bo when bo.op == Op.AND || bo.op == Op.OR -> {
+                // && is decided as soon as an operand is false, || as soon as one is true
+                boolean decidedBy = bo.op == Op.OR;
+                if (jumpIf == decidedBy) {
+                    branch(bo.lhs, jumpIf, target);
+                    branch(bo.rhs, jumpIf, target);
+                } else {
+                    Label skipLabel = Label.create(bo.op == Op.AND ? "AND_FALSE" : "OR_TRUE");
+                    branch(bo.lhs, decidedBy, skipLabel);
+                    branch(bo.rhs, jumpIf, target);
+                    text.emit(skipLabel);
+                }
+            }
+
+            case BinOp bo when isComparison(bo.op) -> compare(bo, jumpIf ? bo.op : negated(bo.op), target);
+
+            default -> {
+                Register condReg = (new ExprValCodeGen(asmProg)).visit(cond);
+                text.emit(jumpIf ? OpCode.BNEZ : OpCode.BEQZ, condReg, target);
+            }
+        }
+    }
+
+    /**
+     * Emits code jumping to target if the operands of bo compare with op.
+     */
+    private void compare(BinOp bo, Op op, Label target) {
+        AssemblyProgram.TextSection text = asmProg.getCurrentTextSection();
+        Expr lhs = bo.lhs;
+        Expr rhs = bo.rhs;
+        if (constantValue(lhs) != null && constantValue(rhs) == null) {
+            // a literal has no side effect, so the operands can be evaluated in either order
+            lhs = bo.rhs;
+            rhs = bo.lhs;
+            op = mirrored(op);
+        }
+
+        Register lhsReg = (new ExprValCodeGen(asmProg)).visit(lhs);
+        Integer constant = constantValue(rhs);
+        if (constant != null && constant == 0) {
+            OpCode.UnaryBranch opcode = switch (op) {
+                case EQ -> OpCode.BEQZ;
+                case NE -> OpCode.BNEZ;
+                case LT -> OpCode.BLTZ;
+                case GT -> OpCode.BGTZ;
+                case LE -> OpCode.BLEZ;
+                case GE -> OpCode.BGEZ;
+                default -> throw new IllegalStateException("Not a comparison: " + op);
+            };
+            text.emit(opcode, lhsReg, target);
+            return;
+        }
+        if (constant != null && compareWithImmediate(lhsReg, op, constant, target)) {
+            return;
+        }
+
+        Register rhsReg = (new ExprValCodeGen(asmProg)).visit(rhs);
+        switch (op) {
+            case EQ -> text.emit(OpCode.BEQ, lhsReg, rhsReg, target);
+            case NE -> text.emit(OpCode.BNE, lhsReg, rhsReg, target);
+            case LT, GT, LE, GE -> {
+                // a < b and a >= b test slt a,b, while a > b and a <= b test slt b,a
+                Register lessReg = Register.Virtual.create();
+                boolean swap = op == Op.GT || op == Op.LE;
+                text.emit(OpCode.SLT, lessReg, swap ? rhsReg : lhsReg, swap ? lhsReg : rhsReg);
+                text.emit(op == Op.LT || op == Op.GT ? OpCode.BNEZ : OpCode.BEQZ, lessReg, target);
+            }
+            default -> throw new IllegalStateException("Not a comparison: " + op);
+        }
+    }
+
+    /**
+     * Emits code jumping to target if the value in lhsReg compares with op to the constant, which is folded into the
+     * immediate of an XORI or SLTI. Returns false, emitting nothing, if it does not fit in 16 bits.
+     */
+    private boolean compareWithImmediate(Register lhsReg, Op op, int constant, Label target) {
+        AssemblyProgram.TextSection text = asmProg.getCurrentTextSection();
+        Register testReg;
+        switch (op) {
+            case EQ, NE -> {
+                if (constant < 0 || constant > 0xFFFF) {
+                    return false;
+                }
+                testReg = Register.Virtual.create();
+                text.emit(OpCode.XORI, testReg, lhsReg, constant);
+                text.emit(op == Op.EQ ? OpCode.BEQZ : OpCode.BNEZ, testReg, target);
+            }
+            case LT, GE -> {
+                if (constant < Short.MIN_VALUE || constant > Short.MAX_VALUE) {
+                    return false;
+                }
+                testReg = Register.Virtual.create();
+                text.emit(OpCode.SLTI, testReg, lhsReg, constant);
+                text.emit(op == Op.LT ? OpCode.BNEZ : OpCode.BEQZ, testReg, target);
+            }
+            case LE, GT -> {
+                // a <= c is a < c + 1
+                if (constant < Short.MIN_VALUE || constant >= Short.MAX_VALUE) {
+                    return false;
+                }
+                testReg = Register.Virtual.create();
+                text.emit(OpCode.SLTI, testReg, lhsReg, constant + 1);
+                text.emit(op == Op.LE ? OpCode.BNEZ : OpCode.BEQZ, testReg, target);
+            }
+            default -> throw new IllegalStateException("Not a comparison: " + op);
+        }
+        return true;
+    }
+
+    private static boolean isComparison(Op op) {
+        return switch (op) {
+            case GT, LT, GE, LE, NE, EQ -> true;
+            default -> false;
+        };
+    }
+
+    private static Op negated(Op op) {
+        return switch (op) {
+            case EQ -> Op.NE;
+            case NE -> Op.EQ;
+            case LT -> Op.GE;
+            case GE -> Op.LT;
+            case GT -> Op.LE;
+            case LE -> Op.GT;
+            default -> throw new IllegalStateException("Not a comparison: " + op);
+        };
+    }
+
+    /**
+     * Returns the comparison with the operands swapped: a op b is b mirrored(op) a.
+     */
+    private static Op mirrored(Op op) {
+        return switch (op) {
+            case LT -> Op.GT;
+            case GT -> Op.LT;
+            case LE -> Op.GE;
+            case GE -> Op.LE;
+            default -> op;
+        };
+    }
+}
@@ -0,0 +1,327 @@
+package gen;
+
+import ast.*;
+
+import java.util.*;
+
+/**
+ * Evaluates the constant expressions of a program at compile time, rewriting its AST. It runs after the type analyser
+ * and the register promotion, whose results it keeps up to date.
+ *
+ * Operations over literals and sizeof become a literal, unless they would trap on overflow or divide by zero at run
+ * time. The identities x+0, 0+x, x-0, x*1, 1*x and x/1 reduce to x, and x*0, 0*x and x%1 to 0 when evaluating x has
+ * no side effect. If and while statements whose condition is constant are pruned.
+ * A promoted local assigned a literal exactly once, by a statement of the function body coming before all its uses, is
+ * replaced by the literal everywhere, and the assignment removed. Folding and propagation alternate until neither
+ * applies, as the uses replaced may make other locals constant.
+ */
+public final class ConstantFoldingPass {
+
+    // the promoted locals known to hold a literal, replaced by a copy of it when folding
+    private final Map<VarDecl, Expr> constants = new HashMap<>();
+
+    public void visit(ASTNode n) {
+        switch (n) {
+            case FunDef fd -> {
+                do {
+                    foldStmt(fd.block);
+                } while (findConstantLocals(fd));
+            }
+
+            default -> {
+                for (int i = 0; i < n.childCount(); i++) {
+                    visit(n.child(i));
+                }
+            }
+        }
+    }
+
+    private Stmt foldStmt(Stmt s) {
+        return switch (s) {
+            case Block b -> {
+                b.stmts.replaceAll(this::foldStmt);
+                yield b;
+            }
+
+            case If i -> {
+                i.condition = fold(i.condition);
+                i.ifStatement = foldStmt(i.ifStatement);
+                if (i.elseStatement != null) {
+                    i.elseStatement = foldStmt(i.elseStatement);
+                }
+                if (i.condition instanceof IntLiteral lit) {
+                    if (lit.value != 0) {
+                        yield i.ifStatement;
+                    }
+                    yield i.elseStatement != null ? i.elseStatement : emptyBlock();
+                }
+                yield i;
+            }
+
+            case While w -> {
+                w.condition = fold(w.condition);
+                w.statement = foldStmt(w.statement);
+                // a loop always taken is kept, it is left by a break or a return
+                yield w.condition instanceof IntLiteral lit && lit.value == 0 ? emptyBlock() : w;
+            }
+
+            case Return r -> {
+                if (r.returnExpression != null) {
+                    r.returnExpression = fold(r.returnExpression);
+                }
+                yield r;
+            }
+
+            case ExprStmt e -> {
+                e.expr = fold(e.expr);
+                yield e;
+            }
+
+            default -> s;
+        };
+    }
+
+    private Expr fold(Expr e) {
+        return switch (e) {
+            case VarExpr v when constants.containsKey(v.vd) -> copy(constants.get(v.vd));
+
+            case SizeOfExpr s -> intLiteral(s.innerType.size());
+
+            case BinOp bo -> {
+                bo.lhs = fold(bo.lhs);
+                bo.rhs = fold(bo.rhs);
+                yield foldBinOp(bo);
+            }
+
+            case TypecastExpr tce -> {
+                tce.expr = fold(tce.expr);
+                if (tce.type instanceof BaseType bt && bt == BaseType.INT && tce.expr instanceof ChrLiteral c) {
+                    yield intLiteral(c.c);
+                }
+                yield tce;
+            }
+
+            case ArrayAccessExpr aae -> {
+                aae.array = fold(aae.array);
+                aae.index = fold(aae.index);
+                yield aae;
+            }
+
+            case FieldAccessExpr fae -> {
+                fae.structOrClass = fold(fae.structOrClass);
+                yield fae;
+            }
+
+            case ValueAtExpr vae -> {
+                vae.expr = fold(vae.expr);
+                yield vae;
+            }
+
+            case AddressOfExpr aoe -> {
+                aoe.expr = fold(aoe.expr);
+                yield aoe;
+            }
+
+            case FunCallExpr fce -> {
+                fce.args.replaceAll(this::fold);
+                yield fce;
+            }
+
+            case Assign a -> {
+                a.lhs = fold(a.lhs);
+                a.rhs = fold(a.rhs);
+                yield a;
+            }
+
+            default -> e;
+        };
+    }
+
+    /**
+     * Returns the folded form of bo, whose operands are already folded.
+     */
+    private static Expr foldBinOp(BinOp bo) {
+        Integer lhs = constantValue(bo.lhs);
+        Integer rhs = constantValue(bo.rhs);
+
+        if (bo.op == Op.AND || bo.op == Op.OR) {
+            // && is decided by a false operand, || by a true one, the other operand giving its truth value
+            boolean decidedBy = bo.op == Op.OR;
+            if (lhs != null) {
+                return (lhs != 0) == decidedBy ? intLiteral(decidedBy ? 1 : 0) : truthValue(bo.rhs, rhs);
+            }
+            if (rhs != null) {
+                if ((rhs != 0) != decidedBy) {
+                    return truthValue(bo.lhs, null);
+                }
+                return isPure(bo.lhs) ? intLiteral(decidedBy ? 1 : 0) : bo;
+            }
+            return bo;
+        }
+
+        if (lhs != null && rhs != null) {
+            Integer value = evaluate(bo.op, lhs, rhs);
+            return value != null ? intLiteral(value) : bo;
+        }
+
+        // the identities only hold for ints, the operands of == and != may be chars or pointers
+        if (!(bo.lhs.type instanceof BaseType lt && lt == BaseType.INT
+                && bo.rhs.type instanceof BaseType rt && rt == BaseType.INT)) {
+            return bo;
+        }
+        return switch (bo.op) {
+            case ADD -> {
+                if (rhs != null && rhs == 0) {
+                    yield bo.lhs;
+                }
+                yield lhs != null && lhs == 0 ? bo.rhs : bo;
+            }
+            case SUB -> rhs != null && rhs == 0 ? bo.lhs : bo;
+            case MUL -> {
+                if (rhs != null && rhs == 1) {
+                    yield bo.lhs;
+                } else if (lhs != null && lhs == 1) {
+                    yield bo.rhs;
+                } else if (rhs != null && rhs == 0 && isPure(bo.lhs) || lhs != null && lhs == 0 && isPure(bo.rhs)) {
+                    yield intLiteral(0);
+                }
+                yield bo;
+            }
+            case DIV -> rhs != null && rhs == 1 ? bo.lhs : bo;
+            case MOD -> rhs != null && rhs == 1 && isPure(bo.lhs) ? intLiteral(0) : bo;
+            default -> bo;
+        };
+    }
+
+    /**
+     * Returns the value of lhs op rhs as computed at run time, or null if it traps or is undefined: + and - trap on
+     * overflow, and division by zero or of the minimum int by -1 is undefined. Comparisons are 1 when true, 0 otherwise.
+     */
+    private static Integer evaluate(Op op, int lhs, int rhs) {
+        try {
+            return switch (op) {
+                case ADD -> Math.addExact(lhs, rhs);
+                case SUB -> Math.subtractExact(lhs, rhs);
+                case MUL -> lhs * rhs;
+                case DIV, MOD -> {
+                    if (rhs == 0 || (lhs == Integer.MIN_VALUE && rhs == -1)) {
+                        yield null;
+                    }
+                    yield op == Op.DIV ? lhs / rhs : lhs % rhs;
+                }
+                case GT -> lhs > rhs ? 1 : 0;
+                case LT -> lhs < rhs ? 1 : 0;
+                case GE -> lhs >= rhs ? 1 : 0;
+                case LE -> lhs <= rhs ? 1 : 0;
+                case EQ -> lhs == rhs ? 1 : 0;
+                case NE -> lhs != rhs ? 1 : 0;
+                default -> null;
+            };
+        } catch (ArithmeticException overflow) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns an expression which is 1 if e is non-zero and 0 otherwise, value being that of e if it is constant.
+     */
+    private static Expr truthValue(Expr e, Integer value) {
+        if (value != null) {
+            return intLiteral(value != 0 ? 1 : 0);
+        }
+        BinOp ne = new BinOp(e, Op.NE, intLiteral(0));
+        ne.type = BaseType.INT;
+        return ne;
+    }
+
+    /**
+     * Finds the promoted locals of fd assigned a literal once, by a statement of the body before all their uses, and
+     * removes their assignment. Returns whether there were any, whose uses the next folding replaces.
+     */
+    private boolean findConstantLocals(FunDef fd) {
+        Map<VarDecl, Integer> assignments = new HashMap<>();
+        countAssignments(fd.block, assignments);
+
+        Set<VarDecl> used = new HashSet<>();
+        boolean found = false;
+        for (Iterator<Stmt> it = fd.block.stmts.iterator(); it.hasNext(); ) {
+            Stmt s = it.next();
+            if (s instanceof ExprStmt es && es.expr instanceof Assign a && a.lhs instanceof VarExpr v
+                    && (a.rhs instanceof IntLiteral || a.rhs instanceof ChrLiteral)
+                    && fd.block.vds.contains(v.vd) && v.vd.hasVirtualReg()
+                    && assignments.get(v.vd) == 1 && !used.contains(v.vd)) {
+                constants.put(v.vd, a.rhs);
+                it.remove();
+                found = true;
+            } else {
+                collectUses(s, used);
+            }
+        }
+        return found;
+    }
+
+    private static void countAssignments(ASTNode n, Map<VarDecl, Integer> assignments) {
+        if (n instanceof Assign a && a.lhs instanceof VarExpr v) {
+            assignments.merge(v.vd, 1, Integer::sum);
+        }
+        for (int i = 0; i < n.childCount(); i++) {
+            countAssignments(n.child(i), assignments);
+        }
+    }
+
+    private static void collectUses(ASTNode n, Set<VarDecl> used) {
+        if (n instanceof VarExpr v) {
+            used.add(v.vd);
+        }
+        for (int i = 0; i < n.childCount(); i++) {
+            collectUses(n.child(i), used);
+        }
+    }
+
+    /**
+     * Returns the value of a literal, or null if e is not one.
+     */
+    private static Integer constantValue(Expr e) {
+        return switch (e) {
+            case IntLiteral i -> i.value;
+            case ChrLiteral c -> (int) c.c;
+            default -> null;
+        };
+    }
+
+    /**
+     * Returns whether evaluating e has no effect: no call, assignment nor trap.
+     */
+    private static boolean isPure(Expr e) {
+        return switch (e) {
+            case IntLiteral ignored -> true;
+            case ChrLiteral ignored -> true;
+            case SizeOfExpr ignored -> true;
+            case VarExpr ignored -> true;
+            case TypecastExpr tce -> isPure(tce.expr);
+            default -> false;
+        };
+    }
+
+    private static Expr copy(Expr literal) {
+        return switch (literal) {
+            case IntLiteral i -> intLiteral(i.value);
+            case ChrLiteral c -> {
+                ChrLiteral copy = new ChrLiteral(c.c);
+                copy.type = BaseType.CHAR;
+                yield copy;
+            }
+            default -> throw new IllegalStateException("Not a literal: " + literal);
+        };
+    }
+
+    private static IntLiteral intLiteral(int value) {
+        IntLiteral i = new IntLiteral(value);
+        i.type = BaseType.INT;
+        return i;
+    }
+
+    private static Block emptyBlock() {
+        return new Block(new ArrayList<>(), new ArrayList<>());
+    }
+}
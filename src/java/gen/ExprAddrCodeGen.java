@@ -14,7 +14,18 @@ public class ExprAddrCodeGen extends CodeGen {
         this.asmProg = asmProg;
     }
 
+    /**
+     * Emits code computing the address of e into a register, and returns it.
+     */
     public Register visit(Expr e) {
+        return register(address(e));
+    }
+
+    /**
+     * Emits code computing the address of e, and returns it as a base register and a displacement, for a load or store
+     * to fold into its immediate.
+     */
+    public Address address(Expr e) {
         AssemblyProgram.TextSection text = asmProg.getCurrentTextSection();
         return switch (e) {
             case IntLiteral ignored -> throw new IllegalStateException("IntLiteral has no address");
@@ -24,116 +35,119 @@ public class ExprAddrCodeGen extends CodeGen {
             case StrLiteral s -> {
                 Register resReg = Register.Virtual.create();
                 text.emit(OpCode.LA, resReg, s.label);
-                yield resReg;
+                yield new Address(resReg, 0);
             }
 
             case VarExpr v -> {
                 if (v.vd.hasVirtualReg()) {
-                    yield v.vd.virtualReg;
+                    yield new Address(v.vd.virtualReg, 0);
                 }
-                Register resReg = Register.Virtual.create();
                 if (v.vd.global) {
+                    Register resReg = Register.Virtual.create();
                     text.emit(OpCode.LA, resReg, v.vd.label);
-                } else {
-                    if (v.vd.isFunctionParam && v.type instanceof ArrayType) {
-                        text.emit(OpCode.LW, resReg, Register.Arch.fp, v.vd.fpOffset);
-                    } else {
-                        text.emit(OpCode.ADDI, resReg, Register.Arch.fp, v.vd.fpOffset);
-                    }
+                    yield new Address(resReg, 0);
                 }
-                yield resReg;
+                if (v.vd.isFunctionParam && v.type instanceof ArrayType) {
+                    Register resReg = Register.Virtual.create();
+                    text.emit(OpCode.LW, resReg, Register.Arch.fp, v.vd.fpOffset);
+                    yield new Address(resReg, 0);
+                }
+                yield displaced(new Address(Register.Arch.fp, 0), v.vd.fpOffset);
             }
 
-            case FunCallExpr f -> (new ExprValCodeGen(asmProg)).visit(f);
+            case FunCallExpr f -> new Address((new ExprValCodeGen(asmProg)).visit(f), 0);
 
             case BinOp ignored -> throw new IllegalStateException("BinOp has no address");
 
             case ArrayAccessExpr aae -> {
-                Register baseAddrReg;
+                Address base;
                 if (aae.array.type instanceof PointerType) {
-                    baseAddrReg = (new ExprValCodeGen(asmProg)).visit(aae.array); // pointer type
+                    base = new Address((new ExprValCodeGen(asmProg)).visit(aae.array), 0); // pointer type
                 } else {
-                    baseAddrReg = visit(aae.array); // array type
+                    base = address(aae.array); // array type
                 }
 
-                Register indexValReg = (new ExprValCodeGen(asmProg)).visit(aae.index);
-
                 int elemSize = aae.type.size();
-                Register resReg = Register.Virtual.create();
-                text.emit(OpCode.LI, resReg, elemSize);
+                Integer index = constantValue(aae.index);
+                if (index != null) {
+                    yield displaced(base, (long) index * elemSize);
+                }
 
-                text.emit(OpCode.MUL, resReg, indexValReg, resReg);
+                Register indexValReg = (new ExprValCodeGen(asmProg)).visit(aae.index);
+                Register offsetReg = Register.Virtual.create();
+                StrengthReduction.emitMul(text, offsetReg, indexValReg, elemSize);
 
-                text.emit(OpCode.ADD, resReg, baseAddrReg, resReg);
-                yield resReg;
+                // the displacement of the array stays in the immediate
+                Register resReg = Register.Virtual.create();
+                text.emit(OpCode.ADD, resReg, base.base(), offsetReg);
+                yield new Address(resReg, base.offset());
             }
 
             case FieldAccessExpr fae -> {
-                Register structAddr = visit(fae.structOrClass);
+                Address structAddr = address(fae.structOrClass);
                 StructType type = (StructType) fae.structOrClass.type;
-                StructTypeDecl std = type.std;
-
-                String fieldName = fae.fieldName;
-                int fieldOffset = 0;
-                for (VarDecl field : std.fields) {
-
-                    int fieldSize = field.type.size();
-                    int fieldAlignment = field.type.alignment();
-
-                    if (fieldOffset % fieldAlignment != 0) {
-                        fieldOffset += fieldAlignment - (fieldOffset % fieldAlignment);
-                    }
-
-                    if (field.name.equals(fieldName)) {
-                        break;
-                    }
-
-                    fieldOffset += fieldSize;
-                }
-
-                Register resReg = Register.Virtual.create();
-                text.emit(OpCode.ADDI, resReg, structAddr, fieldOffset);
-                yield resReg;
+                int fieldOffset = type.layout().offsetOf(fae.fieldName);
+                yield displaced(structAddr, fieldOffset);
             }
 
-            case ValueAtExpr vae -> (new ExprValCodeGen(asmProg)).visit(vae.expr);
+            case ValueAtExpr vae -> new Address((new ExprValCodeGen(asmProg)).visit(vae.expr), 0);
 
-            case AddressOfExpr aoe -> visit(aoe.expr);
+            case AddressOfExpr aoe -> address(aoe.expr);
 
             case SizeOfExpr ignored -> throw new IllegalStateException("SizeOfExpr has no address");
 
-            case TypecastExpr tce -> visit(tce.expr);
+            case TypecastExpr tce -> address(tce.expr);
 
             case Assign a -> {
-                Register lhsAddrReg = visit(a.lhs);
+                Address lhsAddr = address(a.lhs);
                 if (a.type instanceof StructType st) {
-                    Register rhsAddrReg = visit(a.rhs);
-
-                    Register temp = Register.Virtual.create();
-                    int structSize = st.size();
-
-                    for (int i = structSize - 1; i >= 0; --i) {
-                        text.emit(OpCode.LB, temp, rhsAddrReg, i);
-                        text.emit(OpCode.SB, temp, lhsAddrReg, i);
-                    }
-
+                    BlockCopy.emitCopy(text, lhsAddr, address(a.rhs), st.size(), st.alignment());
                 } else {
                     Register rhsValReg = (new ExprValCodeGen(asmProg)).visit(a.rhs);
                     if (a.lhs instanceof VarExpr v && v.vd.hasVirtualReg()) {
-                        text.emit(OpCode.ADD, lhsAddrReg, rhsValReg, Register.Arch.zero);
-                        yield rhsValReg;
+                        text.emit(OpCode.ADD, lhsAddr.base(), rhsValReg, Register.Arch.zero);
+                        yield new Address(rhsValReg, 0);
                     }
                     if (a.type instanceof BaseType bt && bt == BaseType.CHAR) {
-                        text.emit(OpCode.SB, rhsValReg, lhsAddrReg, 0);
+                        text.emit(OpCode.SB, rhsValReg, lhsAddr.base(), lhsAddr.offset());
                     } else {
-                        text.emit(OpCode.SW, rhsValReg, lhsAddrReg, 0);
+                        text.emit(OpCode.SW, rhsValReg, lhsAddr.base(), lhsAddr.offset());
                     }
                 }
-                yield lhsAddrReg;
+                yield lhsAddr;
             }
 
             default -> throw new IllegalStateException("Unexpected value: " + e);
         };
     }
 
+    /**
+     * Emits code adding the displacement of an address to its base, unless it is 0, and returns the register holding it.
+     */
+    Register register(Address address) {
+        if (address.offset() == 0) {
+            return address.base();
+        }
+        Register resReg = Register.Virtual.create();
+        asmProg.getCurrentTextSection().emit(OpCode.ADDI, resReg, address.base(), address.offset());
+        return resReg;
+    }
+
+    /**
+     * Returns the address delta bytes after the given one, adding the displacement to a new base if it does not fit in
+     * an immediate.
+     */
+    private Address displaced(Address address, long delta) {
+        Address moved = address.plus(delta);
+        if (moved != null) {
+            return moved;
+        }
+        AssemblyProgram.TextSection text = asmProg.getCurrentTextSection();
+        Register deltaReg = Register.Virtual.create();
+        text.emit(OpCode.LI, deltaReg, (int) delta);
+        Register resReg = Register.Virtual.create();
+        text.emit(OpCode.ADD, resReg, address.base(), deltaReg);
+        return new Address(resReg, address.offset());
+    }
+
 }
@@ -48,16 +48,7 @@ public class ExprValCodeGen extends CodeGen {
                 if (v.vd.hasVirtualReg()) {
                     yield v.vd.virtualReg;
                 }
-                Register addrReg = (new ExprAddrCodeGen(asmProg)).visit(v);
-                Register resReg = Register.Virtual.create();
-                if (v.type instanceof BaseType bt && bt == BaseType.CHAR) {
-                    text.emit(OpCode.LB, resReg, addrReg, 0);
-                } else if (v.type instanceof ArrayType) {
-                    text.emit(OpCode.LW, resReg, addrReg, 0);
-                } else {
-                    text.emit(OpCode.LW, resReg, addrReg, 0);
-                }
-                yield resReg;
+                yield load(v.type, (new ExprAddrCodeGen(asmProg)).address(v));
             }
 
             case FunCallExpr fce -> {
@@ -68,7 +59,9 @@ public class ExprValCodeGen extends CodeGen {
                         text.emit(OpCode.ADD, Register.Arch.a0, argReg, Register.Arch.zero);
                     }
 
-                    text.emit(OpCode.JAL, Label.getFunctionLabel(fce.fd.name));
+                    // only $a0 and $v0 are overwritten, so the library functions are called inline
+                    text.emit(OpCode.LI, Register.Arch.v0, LIBRARY_SYSCALLS.get(fce.name));
+                    text.emit(OpCode.SYSCALL);
 
                     if (fce.type instanceof BaseType bt && bt == BaseType.VOID) {
                         yield Register.Arch.zero;
@@ -80,32 +73,39 @@ public class ExprValCodeGen extends CodeGen {
                 }
 
                 // PRECALL
+                int[] argRegs = argumentRegisters(fce.fd.params);
                 int totalStackSpace = 0;
-                // space for arguments
-                for (VarDecl param : fce.fd.params) {
-                    totalStackSpace += param.type instanceof ArrayType ? Type.referenceSize() : param.type.size();
-                    if (totalStackSpace % 4 != 0) {
-                        totalStackSpace += 4 - (totalStackSpace % 4);
+                // space for the arguments passed on the stack
+                for (int k = 0; k < fce.fd.params.size(); k++) {
+                    VarDecl param = fce.fd.params.get(k);
+                    if (argRegs[k] < 0) {
+                        totalStackSpace += wordAligned(param.type instanceof ArrayType ? Type.referenceSize() : param.type.size());
                     }
                 }
-                text.emit(OpCode.ADDIU, Register.Arch.sp, Register.Arch.sp, -totalStackSpace);
+                if (totalStackSpace > 0) {
+                    text.emit(OpCode.ADDIU, Register.Arch.sp, Register.Arch.sp, -totalStackSpace);
+                }
+                Register[] argVals = new Register[fce.args.size()];
                 int offset = 0;
-                for (Expr arg : fce.args.reversed()) {
+                for (int k = fce.args.size() - 1; k >= 0; k--) {
+                    Expr arg = fce.args.get(k);
                     Type argType = arg.type;
+                    if (argRegs[k] < 0 && argType instanceof StructType st) {
+                        Address argAddr = (new ExprAddrCodeGen(asmProg)).address(arg);
+                        BlockCopy.emitCopy(text, new Address(Register.Arch.sp, offset), argAddr, st.size(),
+                                st.alignment());
+                        offset += wordAligned(st.size());
+                        continue;
+                    }
                     Register argReg = visit(arg);
-                    if (argType instanceof StructType st) {
-                        int structSize = st.size();
-
-                        int tempOff = offset;
-                        Register tempReg = Register.Virtual.create();
-                        for (int i = structSize - 1; i >= 0; --i) {
-                            text.emit(OpCode.LB, tempReg, argReg, i);
-                            text.emit(OpCode.SB, tempReg, Register.Arch.sp, tempOff + i);
-                        }
-                        offset += structSize;
-                        if (offset % 4 != 0) {
-                            offset += 4 - (offset % 4);
+                    if (argRegs[k] >= 0) {
+                        // the variable could be assigned by the arguments evaluated after it
+                        if (k > 0 && yieldsVariableRegister(arg)) {
+                            Register copy = Register.Virtual.create();
+                            text.emit(OpCode.ADDI, copy, argReg, 0);
+                            argReg = copy;
                         }
+                        argVals[k] = argReg;
                     } else if (argType instanceof BaseType bt && bt == BaseType.CHAR) {
                         text.emit(OpCode.SB, argReg, Register.Arch.sp, offset);
                         offset += 4;
@@ -115,31 +115,50 @@ public class ExprValCodeGen extends CodeGen {
                     }
                 }
 
-                // save space for return value
-                int retSize = fce.type instanceof ArrayType ? 4 : fce.type.size();
-                if (retSize % 4 != 0) {
-                    retSize += 4 - (retSize % 4);
+                // save space for a structure returned
+                if (!isPassedInRegister(fce.type)) {
+                    int retSize = wordAligned(fce.type.size());
+                    totalStackSpace += retSize;
+                    text.emit(OpCode.ADDIU, Register.Arch.sp, Register.Arch.sp, -retSize);
                 }
 
-                totalStackSpace += retSize;
-                text.emit(OpCode.ADDIU, Register.Arch.sp, Register.Arch.sp, -retSize);
+                // the argument registers are set last, as the calls made by the arguments overwrite them
+                for (int k = 0; k < argVals.length; k++) {
+                    if (argRegs[k] >= 0) {
+                        text.emit(OpCode.ADD, ARG_REGS[argRegs[k]], argVals[k], Register.Arch.zero);
+                    }
+                }
 
                 text.emit(OpCode.JAL, Label.getFunctionLabel(fce.fd.name));
 
-
-
                 //POST-CALL
-                Register resReg = Register.Virtual.create();
+                Register resReg = Register.Arch.zero;
                 if (fce.type instanceof StructType) {
+                    resReg = Register.Virtual.create();
                     text.emit(OpCode.ADD, resReg, Register.Arch.zero, Register.Arch.sp);
-                } else if (fce.type instanceof BaseType bt && bt == BaseType.CHAR) {
-                    text.emit(OpCode.LB, resReg, Register.Arch.sp, 0);
-                } else {
-                    text.emit(OpCode.LW, resReg, Register.Arch.sp, 0);
+                } else if (!(fce.type instanceof BaseType bt && bt == BaseType.VOID)) {
+                    resReg = Register.Virtual.create();
+                    text.emit(OpCode.ADD, resReg, Register.Arch.v0, Register.Arch.zero);
+                }
+
+                if (totalStackSpace > 0) {
+                    text.emit(OpCode.ADDIU, Register.Arch.sp, Register.Arch.sp, totalStackSpace);
                 }
 
-                text.emit(OpCode.ADDIU, Register.Arch.sp, Register.Arch.sp, totalStackSpace);
+                yield resReg;
+            }
 
+            case BinOp bo when isByConstant(bo) -> {
+                // shifts and additions rather than mult or div, the constant operand having no side effect
+                boolean constantLhs = constantValue(bo.rhs) == null;
+                Register operandReg = visit(constantLhs ? bo.rhs : bo.lhs);
+                int constant = constantValue(constantLhs ? bo.lhs : bo.rhs);
+                Register resReg = Register.Virtual.create();
+                switch (bo.op) {
+                    case MUL -> StrengthReduction.emitMul(text, resReg, operandReg, constant);
+                    case DIV -> StrengthReduction.emitDiv(text, resReg, operandReg, constant);
+                    default -> StrengthReduction.emitMod(text, resReg, operandReg, constant);
+                }
                 yield resReg;
             }
 
@@ -215,42 +234,11 @@ public class ExprValCodeGen extends CodeGen {
                 yield resReg;
             }
 
-            case ArrayAccessExpr aae -> {
-                Register addrReg = (new ExprAddrCodeGen(asmProg)).visit(aae);
-                Register resReg = Register.Virtual.create();
-                if (aae.type instanceof BaseType bt && bt == BaseType.CHAR) {
-                    text.emit(OpCode.LB, resReg, addrReg, 0);
-                } else {
-                    text.emit(OpCode.LW, resReg, addrReg, 0);
-                }
-                yield resReg;
-            }
-
-            case FieldAccessExpr fae -> {
-                Register addrReg = (new ExprAddrCodeGen(asmProg)).visit(fae);
-                Register resReg = Register.Virtual.create();
-
-                if (fae.type instanceof BaseType bt && bt == BaseType.CHAR) {
-                    text.emit(OpCode.LB, resReg, addrReg, 0);
-                } else {
-                    text.emit(OpCode.LW, resReg, addrReg, 0);
-                }
+            case ArrayAccessExpr aae -> load(aae.type, (new ExprAddrCodeGen(asmProg)).address(aae));
 
-                yield resReg;
-            }
-
-            case ValueAtExpr vae -> {
-                Register ptrAddrReg = visit(vae.expr);
-                Register resReg = Register.Virtual.create();
+            case FieldAccessExpr fae -> load(fae.type, (new ExprAddrCodeGen(asmProg)).address(fae));
 
-                if (vae.type instanceof BaseType bt && bt == BaseType.CHAR) {
-                    text.emit(OpCode.LB, resReg, ptrAddrReg, 0);
-                } else {
-                    text.emit(OpCode.LW, resReg, ptrAddrReg, 0);
-                }
-
-                yield resReg;
-            }
+            case ValueAtExpr vae -> load(vae.type, (new ExprAddrCodeGen(asmProg)).address(vae));
 
             case AddressOfExpr aoe -> (new ExprAddrCodeGen(asmProg)).visit(aoe);
 
@@ -271,12 +259,12 @@ public class ExprValCodeGen extends CodeGen {
                     yield rhsValReg;
                 }
 
-                Register lhsAddrReg = (new ExprAddrCodeGen(asmProg)).visit(a.lhs);
+                Address lhsAddr = (new ExprAddrCodeGen(asmProg)).address(a.lhs);
 
                 if (a.type instanceof BaseType bt && bt == BaseType.CHAR) {
-                    text.emit(OpCode.SB, rhsValReg, lhsAddrReg, 0);
+                    text.emit(OpCode.SB, rhsValReg, lhsAddr.base(), lhsAddr.offset());
                 } else {
-                    text.emit(OpCode.SW, rhsValReg, lhsAddrReg, 0);
+                    text.emit(OpCode.SW, rhsValReg, lhsAddr.base(), lhsAddr.offset());
                 }
 
                 yield rhsValReg;
@@ -288,12 +276,42 @@ public class ExprValCodeGen extends CodeGen {
 
 
 
-    private boolean isLibraryFunction(String functionName) {
-        return switch (functionName) {
-            case "print_s", "print_i", "print_c", "read_c", "read_i", "mcmalloc" -> true;
+    /**
+     * Emits code loading the value of the given type at an address, a byte for a char and a word otherwise.
+     */
+    private Register load(Type type, Address address) {
+        Register resReg = Register.Virtual.create();
+        if (type instanceof BaseType bt && bt == BaseType.CHAR) {
+            asmProg.getCurrentTextSection().emit(OpCode.LB, resReg, address.base(), address.offset());
+        } else {
+            asmProg.getCurrentTextSection().emit(OpCode.LW, resReg, address.base(), address.offset());
+        }
+        return resReg;
+    }
+
+    /**
+     * Returns whether bo multiplies by a constant, or divides a value or takes its remainder by a constant.
+     */
+    private static boolean isByConstant(BinOp bo) {
+        return switch (bo.op) {
+            case MUL -> constantValue(bo.lhs) != null || constantValue(bo.rhs) != null;
+            case DIV, MOD -> constantValue(bo.rhs) != null;
             default -> false;
         };
     }
 
+    /**
+     * Returns whether the value of e is left in the register of a variable rather than in a new one.
+     */
+    private static boolean yieldsVariableRegister(Expr e) {
+        return switch (e) {
+            case VarExpr v -> v.vd.hasVirtualReg();
+            case Assign a -> yieldsVariableRegister(a.rhs);
+            case TypecastExpr tce -> yieldsVariableRegister(tce.expr);
+            default -> false;
+        };
+    }
+
+
 
 }
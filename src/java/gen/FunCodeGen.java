@@ -1,9 +1,17 @@
 package gen;
 
+import ast.ASTNode;
+import ast.Assign;
 import ast.BaseType;
+import ast.FunCallExpr;
 import ast.FunDef;
+import ast.StructType;
+import ast.VarDecl;
 import gen.asm.*;
 import gen.asm.OpCode;
+import regalloc.FrameLayout;
+
+import java.util.Arrays;
 
 /**
  * A visitor that produces code for a single function declaration
@@ -22,11 +30,54 @@ public class FunCodeGen extends CodeGen {
         Label fdLabel = Label.createFunDefLabel(fd.name);
         text.emit(fdLabel);
 
-        emitPrologue(text, fd.localVarSpace);
+        boolean frameless = isFrameless(fd);
+        if (frameless) {
+            text.emit(OpCode.PUSH_REGISTERS);
+            FrameLayout.record(text, FrameLayout.frameless());
+        } else {
+            emitPrologue(text, fd.localVarSpace);
+            // $sp is below the saved $ra and the local variables
+            FrameLayout.record(text, FrameLayout.framePointer(-4 - fd.localVarSpace));
+        }
+        emitParameters(text, fd);
         Label epilogueLabel = Label.createEpilogueLabel(fd.name);
         emitBody(fd, epilogueLabel);
         text.emit(epilogueLabel);
-        emitEpilogue(text);
+        if (frameless) {
+            text.emit(OpCode.POP_REGISTERS);
+            text.emit(OpCode.JR, Register.Arch.ra);
+        } else {
+            emitEpilogue(text);
+        }
+    }
+
+    /**
+     * A leaf function keeping nothing in memory needs no frame: it does not overwrite $ra, and nothing is addressed
+     * from $fp, which it then leaves untouched. Its recorded layout has the register allocator address its slots from
+     * $sp instead.
+     * Calls to the library functions do not count, being expanded inline, while copies of large structures call memcpy.
+     */
+    private static boolean isFrameless(FunDef fd) {
+        return fd.localVarSpace == 0
+                && isPassedInRegister(fd.type)
+                && Arrays.stream(argumentRegisters(fd.params)).allMatch(argReg -> argReg >= 0)
+                && !containsCall(fd.block);
+    }
+
+    private static boolean containsCall(ASTNode n) {
+        if (n instanceof FunCallExpr fce && !isLibraryFunction(fce.name)) {
+            return true;
+        }
+        if (n instanceof Assign a && a.type instanceof StructType st
+                && BlockCopy.callsMemcpy(st.size(), st.alignment())) {
+            return true;
+        }
+        for (int i = 0; i < n.childCount(); i++) {
+            if (containsCall(n.child(i))) {
+                return true;
+            }
+        }
+        return false;
     }
 
 
@@ -43,6 +94,27 @@ public class FunCodeGen extends CodeGen {
         text.emit(OpCode.PUSH_REGISTERS);   // push registers to be used
     }
 
+    /**
+     * Moves the parameters where the body expects them: into their virtual register, from the argument register or
+     * the stack, or from the argument register into the frame.
+     */
+    private void emitParameters(AssemblyProgram.TextSection text, FunDef fd) {
+        int[] argRegs = argumentRegisters(fd.params);
+        for (int k = 0; k < fd.params.size(); k++) {
+            VarDecl param = fd.params.get(k);
+            boolean isChar = param.type instanceof BaseType bt && bt == BaseType.CHAR;
+            if (param.hasVirtualReg()) {
+                if (argRegs[k] >= 0) {
+                    text.emit(OpCode.ADD, param.virtualReg, ARG_REGS[argRegs[k]], Register.Arch.zero);
+                } else {
+                    text.emit(isChar ? OpCode.LB : OpCode.LW, param.virtualReg, Register.Arch.fp, param.fpOffset);
+                }
+            } else if (argRegs[k] >= 0) {
+                text.emit(isChar ? OpCode.SB : OpCode.SW, ARG_REGS[argRegs[k]], Register.Arch.fp, param.fpOffset);
+            }
+        }
+    }
+
     private void emitEpilogue(AssemblyProgram.TextSection text) {
         text.emit(OpCode.POP_REGISTERS); // restore registers
         text.emit(OpCode.ADDIU, Register.Arch.sp, Register.Arch.fp, 4); // restore sp
@@ -55,50 +127,4 @@ public class FunCodeGen extends CodeGen {
         StmtCodeGen scd = new StmtCodeGen(asmProg, epilogueLabel);
         scd.visit(fd.block);
     }
-
-    public void emitLibraryFunctions() {
-        AssemblyProgram.TextSection text = asmProg.emitNewTextSection();
-
-        Label print_s = Label.createFunDefLabel("print_s");
-        text.emit(print_s);
-        text.emit(OpCode.LI, Register.Arch.v0, 4);
-        text.emit(OpCode.SYSCALL);
-        text.emit(OpCode.JR, Register.Arch.ra);
-
-        text = asmProg.emitNewTextSection();
-        Label print_i = Label.createFunDefLabel("print_i");
-        text.emit(print_i);
-        text.emit(OpCode.LI, Register.Arch.v0, 1);
-        text.emit(OpCode.SYSCALL);
-        text.emit(OpCode.JR, Register.Arch.ra);
-
-        text = asmProg.emitNewTextSection();
-        Label print_c = Label.createFunDefLabel("print_c");
-        text.emit(print_c);
-        text.emit(OpCode.LI, Register.Arch.v0, 11);
-        text.emit(OpCode.SYSCALL);
-        text.emit(OpCode.JR, Register.Arch.ra);
-
-        text = asmProg.emitNewTextSection();
-        Label read_c = Label.createFunDefLabel("read_c");
-        text.emit(read_c);
-        text.emit(OpCode.LI, Register.Arch.v0, 12);
-        text.emit(OpCode.SYSCALL);
-        text.emit(OpCode.JR, Register.Arch.ra);
-
-        text = asmProg.emitNewTextSection();
-        Label read_i = Label.createFunDefLabel("read_i");
-        text.emit(read_i);
-        text.emit(OpCode.LI, Register.Arch.v0, 5);
-        text.emit(OpCode.SYSCALL);
-        text.emit(OpCode.JR, Register.Arch.ra);
-
-        text = asmProg.emitNewTextSection();
-        Label mcmalloc = Label.createFunDefLabel("mcmalloc");
-        text.emit(mcmalloc);
-        text.emit(OpCode.LI, Register.Arch.v0, 9);
-        text.emit(OpCode.SYSCALL);
-        text.emit(OpCode.JR, Register.Arch.ra);
-    }
-
 }
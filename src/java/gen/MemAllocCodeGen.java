@@ -46,29 +46,36 @@ public class MemAllocCodeGen extends CodeGen {
 
             case FunDef fd -> {
                 int offset = 4; // FP + 4
-                if (!(fd.type instanceof BaseType bt && bt == BaseType.VOID)) {
+                if (!isPassedInRegister(fd.type)) {
                     fd.retValFpOffset = +4;
-                    int retSize = (fd.type instanceof ArrayType) ? Type.referenceSize() : fd.type.size(); // arrays are passed by reference
-                    if (retSize % 4 != 0) {
-                        retSize += 4 - (retSize % 4);
-                    }
-                    offset += retSize;
+                    offset += wordAligned(fd.type.size());
                 }
 
-                for (VarDecl param : fd.params.reversed()) {
-                    param.fpOffset = offset;
+                int[] argRegs = argumentRegisters(fd.params);
+                for (int k = fd.params.size() - 1; k >= 0; k--) {
+                    VarDecl param = fd.params.get(k);
                     param.isFunctionParam = true;
-                    int paramSize = (param.type instanceof ArrayType) ? Type.referenceSize() : param.type.size();
-                    if (paramSize % 4 != 0) {
-                        paramSize += 4 - (paramSize % 4);
+                    if (argRegs[k] < 0) {
+                        param.fpOffset = offset;
+                        // arrays are passed by reference
+                        offset += wordAligned(param.type instanceof ArrayType ? Type.referenceSize() : param.type.size());
                     }
-                    offset += paramSize;
                 }
 
                 this.fpOffset = -4;
                 this.currentFunction = fd;
                 this.global = false;
 
+                // a parameter passed in a register whose address is taken is stored in the frame on entry
+                for (int k = 0; k < fd.params.size(); k++) {
+                    VarDecl param = fd.params.get(k);
+                    if (argRegs[k] >= 0 && !param.hasVirtualReg()) {
+                        this.fpOffset -= 4;
+                        param.fpOffset = this.fpOffset;
+                        fd.localVarSpace += 4;
+                    }
+                }
+
                 visit(fd.block);
 
                 this.global = true;
@@ -84,8 +91,8 @@ public class MemAllocCodeGen extends CodeGen {
             }
 
             default -> {
-                for (ASTNode c : n.children()) {
-                    visit(c);
+                for (int i = 0; i < n.childCount(); i++) {
+                    visit(n.child(i));
                 }
             }
 
@@ -3,6 +3,7 @@ package gen;
 import ast.FunDef;
 import ast.Program;
 import gen.asm.*;
+import regalloc.FrameLayout;
 
 /**
  * This visitor should produce a program.
@@ -14,9 +15,14 @@ public class ProgramCodeGen extends CodeGen {
     }
 
     void generate(Program p) {
+        FrameLayout.clear();
+
         RegisterPromotionPass rp = new RegisterPromotionPass();
         rp.visit(p);
 
+        ConstantFoldingPass cf = new ConstantFoldingPass();
+        cf.visit(p);
+
         // allocate all variables
         MemAllocCodeGen allocator = new MemAllocCodeGen(asmProg);
         allocator.visit(p);
@@ -37,9 +43,7 @@ public class ProgramCodeGen extends CodeGen {
                 default -> {}// nothing to do
             }});
 
-        // generate code for lib functions
-        FunCodeGen libFcg = new FunCodeGen(asmProg);
-        libFcg.emitLibraryFunctions();
+        BlockCopy.emitMemcpyIfUsed(asmProg);
     }
 
 
@@ -8,6 +8,12 @@ public final class RegisterPromotionPass {
     public void visit(ASTNode n) {
         switch (n) {
             case FunDef fd -> {
+                // parameters are promoted too, the structures apart as they are passed on the stack
+                fd.params.forEach(param -> {
+                    if (!(param.type instanceof StructType)) {
+                        param.virtualReg = Register.Virtual.create();
+                    }
+                });
                 fd.block.vds.forEach(vd -> {
                     if (!(vd.type instanceof StructType || vd.type instanceof ArrayType)) {
                         vd.virtualReg = Register.Virtual.create();
@@ -25,7 +31,11 @@ public final class RegisterPromotionPass {
                 }
             }
 
-            default -> n.children().forEach(this::visit);
+            default -> {
+                for (int i = 0; i < n.childCount(); i++) {
+                    visit(n.child(i));
+                }
+            }
         }
     }
 
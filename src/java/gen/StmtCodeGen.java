@@ -34,20 +34,17 @@ public class StmtCodeGen extends CodeGen {
                 Label bodyLabel = Label.create("WHILE_BODY");
                 Label endLabel = Label.create("WHILE_END");
                 Label condLabel = Label.create("WHILE_COND");
-                Register condReg;
 
                 breakStack.push(endLabel);
                 continueStack.push(condLabel);
 
                 text.emit(condLabel);
-                condReg = (new ExprValCodeGen(asmProg)).visit(w.condition);
-                text.emit(OpCode.BEQZ, condReg, endLabel);
+                (new CondCodeGen(asmProg)).branch(w.condition, false, endLabel);
                 text.emit(bodyLabel);
 
                 visit(w.statement);
 
-                condReg = (new ExprValCodeGen(asmProg)).visit(w.condition);
-                text.emit(OpCode.BNEZ, condReg, bodyLabel);
+                (new CondCodeGen(asmProg)).branch(w.condition, true, bodyLabel);
                 text.emit(endLabel);
 
                 breakStack.pop();
@@ -71,14 +68,13 @@ public class StmtCodeGen extends CodeGen {
             case If i -> {
                 Label endLabel = Label.create("IF_END");
 
-                Register condReg = (new ExprValCodeGen(asmProg)).visit(i.condition);
                 if (i.elseStatement == null) {
-                    text.emit(OpCode.BEQZ, condReg, endLabel);
+                    (new CondCodeGen(asmProg)).branch(i.condition, false, endLabel);
                     visit(i.ifStatement);
                     text.emit(endLabel);
                 } else {
                     Label elseLabel = Label.create("ELSE_LABEL");
-                    text.emit(OpCode.BEQZ, condReg, elseLabel);
+                    (new CondCodeGen(asmProg)).branch(i.condition, false, elseLabel);
                     visit(i.ifStatement);
                     text.emit(OpCode.J, endLabel);
                     text.emit(elseLabel);
@@ -93,25 +89,18 @@ public class StmtCodeGen extends CodeGen {
                     return;
                 }
 
-                Register returnValReg = (new ExprValCodeGen(asmProg)).visit(r.returnExpression);
-                if (r.returnExpression.type instanceof BaseType bt && bt == BaseType.VOID) {
+                if (r.returnExpression.type instanceof StructType st) {
+                    int retValOffset = 4;
+                    Address returnValAddr = (new ExprAddrCodeGen(asmProg)).address(r.returnExpression);
+                    BlockCopy.emitCopy(text, new Address(Register.Arch.fp, retValOffset), returnValAddr, st.size(),
+                            st.alignment());
                     text.emit(OpCode.J, epilogueLabel);
                     return;
                 }
 
-                int retValOffset = 4;
-
-                if (r.returnExpression.type instanceof StructType st) {
-                    int structSize = st.size();
-                    Register tempReg = Register.Virtual.create();
-                    for (int i = structSize - 1; i >= 0; --i) {
-                        text.emit(OpCode.LB, tempReg, returnValReg, i);
-                        text.emit(OpCode.SB, tempReg, Register.Arch.fp, retValOffset + i);
-                    }
-                } else if (r.returnExpression.type instanceof BaseType bt && bt == BaseType.CHAR){
-                    text.emit(OpCode.SB, returnValReg, Register.Arch.fp, retValOffset);
-                } else {
-                    text.emit(OpCode.SW, returnValReg, Register.Arch.fp, retValOffset);
+                Register returnValReg = (new ExprValCodeGen(asmProg)).visit(r.returnExpression);
+                if (!(r.returnExpression.type instanceof BaseType bt && bt == BaseType.VOID)) {
+                    text.emit(OpCode.ADD, Register.Arch.v0, returnValReg, Register.Arch.zero);
                 }
                 text.emit(OpCode.J, epilogueLabel);
             }
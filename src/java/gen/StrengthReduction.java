@@ -0,0 +1,210 @@
+package gen;
+
+import gen.asm.AssemblyProgram;
+import gen.asm.OpCode;
+import gen.asm.Register;
+
+/**
+ * Emits multiplications, divisions and remainders by constants with shifts, additions and at most a multiplication,
+ * instead of MULT and DIV which take many cycles.
+ *
+ * The results are those of MULT and DIV: products wrap around, and quotients are truncated towards zero with remainders
+ * of the sign of the dividend. Shifts and additions use the unsigned forms, which wrap around rather than trap.
+ * Division by a constant which is not a power of two multiplies by a magic number, the fixed point reciprocal of the
+ * divisor, and keeps the high word (Hacker's Delight, chapter 10).
+ */
+final class StrengthReduction {
+
+    private StrengthReduction() {}
+
+    /**
+     * Emits code computing src * c into dst.
+     */
+    static void emitMul(AssemblyProgram.TextSection text, Register dst, Register src, int c) {
+        if (c == 0) {
+            text.emit(OpCode.ADD, dst, Register.Arch.zero, Register.Arch.zero);
+        } else if (c == 1) {
+            text.emit(OpCode.ADD, dst, src, Register.Arch.zero);
+        } else if (c == -1 || isPowerOfTwo(c) || (c < 0 && isPowerOfTwo(-c))) {
+            // x * -2^k is -(x << k)
+            Register shifted = c > 0 ? dst : Register.Virtual.create();
+            text.emit(OpCode.SLL, shifted, src, Integer.numberOfTrailingZeros(Math.abs(c)));
+            if (c < 0) {
+                text.emit(OpCode.SUBU, dst, Register.Arch.zero, shifted);
+            }
+        } else if (isShiftAddMultiplier(c)) {
+            emitShiftAdd(text, dst, src, c);
+        } else {
+            Register constReg = Register.Virtual.create();
+            text.emit(OpCode.LI, constReg, c);
+            text.emit(OpCode.MULT, src, constReg);
+            text.emit(OpCode.MFLO, dst);
+        }
+    }
+
+    /**
+     * Returns whether the multiplication by c is done with at most three shifts and additions, without MULT.
+     */
+    private static boolean isShiftAddMultiplier(int c) {
+        return c >= -1 && c <= 1 || isPowerOfTwo(Math.abs(c))
+                || c > 0 && (Integer.bitCount(c) == 2 || isPowerOfTwo(c + 1));
+    }
+
+    private static void emitShiftAdd(AssemblyProgram.TextSection text, Register dst, Register src, int c) {
+        if (c > 0 && Integer.bitCount(c) == 2) {
+            // 2^a + 2^b, the lower shift being omitted when b is 0
+            int low = Integer.numberOfTrailingZeros(c);
+            int high = 31 - Integer.numberOfLeadingZeros(c);
+            Register highReg = Register.Virtual.create();
+            text.emit(OpCode.SLL, highReg, src, high);
+            Register lowReg = src;
+            if (low > 0) {
+                lowReg = Register.Virtual.create();
+                text.emit(OpCode.SLL, lowReg, src, low);
+            }
+            text.emit(OpCode.ADDU, dst, highReg, lowReg);
+        } else if (c > 0 && isPowerOfTwo(c + 1)) {
+            // 2^a - 1
+            Register highReg = Register.Virtual.create();
+            text.emit(OpCode.SLL, highReg, src, Integer.numberOfTrailingZeros(c + 1));
+            text.emit(OpCode.SUBU, dst, highReg, src);
+        }
+    }
+
+    /**
+     * Emits code computing src / d into dst.
+     */
+    static void emitDiv(AssemblyProgram.TextSection text, Register dst, Register src, int d) {
+        if (d == 0 || d == Integer.MIN_VALUE) {
+            emitDivInstruction(text, dst, src, d, OpCode.MFLO);
+        } else if (d == 1) {
+            text.emit(OpCode.ADD, dst, src, Register.Arch.zero);
+        } else if (d == -1) {
+            text.emit(OpCode.SUBU, dst, Register.Arch.zero, src);
+        } else if (isPowerOfTwo(Math.abs(d))) {
+            // shifting rounds towards minus infinity, so negative dividends are biased by 2^k - 1 first
+            int k = Integer.numberOfTrailingZeros(Math.abs(d));
+            Register biased = Register.Virtual.create();
+            text.emit(OpCode.ADDU, biased, src, emitBias(text, src, k));
+            Register quotient = d > 0 ? dst : Register.Virtual.create();
+            text.emit(OpCode.SRA, quotient, biased, k);
+            if (d < 0) {
+                text.emit(OpCode.SUBU, dst, Register.Arch.zero, quotient);
+            }
+        } else {
+            int[] magic = magic(d);
+            int m = magic[0];
+            int s = magic[1];
+
+            Register magicReg = Register.Virtual.create();
+            text.emit(OpCode.LI, magicReg, m);
+            text.emit(OpCode.MULT, src, magicReg);
+            Register quotient = Register.Virtual.create();
+            text.emit(OpCode.MFHI, quotient);
+            if (d > 0 && m < 0) {
+                text.emit(OpCode.ADDU, quotient, quotient, src);
+            } else if (d < 0 && m > 0) {
+                text.emit(OpCode.SUBU, quotient, quotient, src);
+            }
+            if (s > 0) {
+                text.emit(OpCode.SRA, quotient, quotient, s);
+            }
+            // the estimate is one less than the quotient when negative
+            Register signBit = Register.Virtual.create();
+            text.emit(OpCode.SRL, signBit, quotient, 31);
+            text.emit(OpCode.ADDU, dst, quotient, signBit);
+        }
+    }
+
+    /**
+     * Emits code computing src % d into dst.
+     */
+    static void emitMod(AssemblyProgram.TextSection text, Register dst, Register src, int d) {
+        if (d == 0 || d == Integer.MIN_VALUE) {
+            emitDivInstruction(text, dst, src, d, OpCode.MFHI);
+        } else if (d == 1 || d == -1) {
+            text.emit(OpCode.ADD, dst, Register.Arch.zero, Register.Arch.zero);
+        } else if (isPowerOfTwo(Math.abs(d)) && Math.abs(d) <= 0x10000) {
+            // the low bits of the biased dividend, unbiased: the remainder has the sign of the dividend
+            int k = Integer.numberOfTrailingZeros(Math.abs(d));
+            Register bias = emitBias(text, src, k);
+            Register biased = Register.Virtual.create();
+            text.emit(OpCode.ADDU, biased, src, bias);
+            text.emit(OpCode.ANDI, biased, biased, Math.abs(d) - 1);
+            text.emit(OpCode.SUBU, dst, biased, bias);
+        } else if (!isShiftAddMultiplier(d)) {
+            // a second multiplication would cost about as much as the division
+            emitDivInstruction(text, dst, src, d, OpCode.MFHI);
+        } else {
+            // x - (x / d) * d
+            Register quotient = Register.Virtual.create();
+            emitDiv(text, quotient, src, d);
+            Register product = Register.Virtual.create();
+            emitMul(text, product, quotient, d);
+            text.emit(OpCode.SUBU, dst, src, product);
+        }
+    }
+
+    /**
+     * Emits code computing 2^k - 1 if src is negative, 0 otherwise, and returns its register.
+     */
+    private static Register emitBias(AssemblyProgram.TextSection text, Register src, int k) {
+        Register bias = Register.Virtual.create();
+        if (k == 1) {
+            text.emit(OpCode.SRL, bias, src, 31);
+        } else {
+            text.emit(OpCode.SRA, bias, src, 31);
+            text.emit(OpCode.SRL, bias, bias, 32 - k);
+        }
+        return bias;
+    }
+
+    private static void emitDivInstruction(AssemblyProgram.TextSection text, Register dst, Register src, int d,
+                                           OpCode.UnaryArithmetic result) {
+        Register constReg = Register.Virtual.create();
+        text.emit(OpCode.LI, constReg, d);
+        text.emit(OpCode.DIV, src, constReg);
+        text.emit(result, dst);
+    }
+
+    private static boolean isPowerOfTwo(int c) {
+        return c > 0 && (c & (c - 1)) == 0;
+    }
+
+    /**
+     * Returns the magic number and shift amount for the signed division by d, with 2 <= |d| < 2^31: the quotient is
+     * the high word of the product of the dividend by the magic number, shifted right, after some corrections.
+     */
+    static int[] magic(int d) {
+        final long twoTo31 = 0x80000000L;
+        final long mask = 0xFFFFFFFFL;
+        long ad = Math.abs((long) d);
+        long t = twoTo31 + (d < 0 ? 1 : 0);
+        long anc = t - 1 - t % ad; // absolute value of nc
+        int p = 31;
+        long q1 = twoTo31 / anc;
+        long r1 = twoTo31 - q1 * anc;
+        long q2 = twoTo31 / ad;
+        long r2 = twoTo31 - q2 * ad;
+        long delta;
+        do {
+            p++;
+            q1 = (2 * q1) & mask;
+            r1 = 2 * r1;
+            if (r1 >= anc) {
+                q1 = (q1 + 1) & mask;
+                r1 -= anc;
+            }
+            q2 = (2 * q2) & mask;
+            r2 = 2 * r2;
+            if (r2 >= ad) {
+                q2 = (q2 + 1) & mask;
+                r2 -= ad;
+            }
+            delta = ad - r2;
+        } while (q1 < delta || (q1 == delta && r1 == 0));
+
+        int m = (int) (q2 + 1);
+        return new int[]{d < 0 ? -m : m, p - 32};
+    }
+}
@@ -0,0 +1,99 @@
+package lexer;
+
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A {@link Scanner} that memory-maps the whole source file and decodes it in one go, instead of pulling characters
+ * one by one through a {@link BufferedReader}. The decoded characters are then walked by index.
+ *
+ * Line and column tracking is identical to {@link Scanner}, so token positions do not change.
+ */
+public class MappedScanner extends Scanner {
+
+    private final char[] buffer;
+    private final int length;
+    private int pos = 0;
+
+    private int line = 1;
+    private int column = 1;
+
+    public MappedScanner(File source) throws FileNotFoundException {
+        try (FileChannel channel = new FileInputStream(source).getChannel()) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            // same charset as the FileReader used by Scanner
+            CharBuffer chars = Charset.defaultCharset().decode(bytes);
+            buffer = chars.array();
+            length = chars.limit();
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException ioe) {
+            throw new Error(ioe); // propagate as unchecked exception
+        }
+    }
+
+
+    @Override
+    public int getColumn() {
+        return column;
+    }
+
+    @Override
+    public int getLine() {
+        return line;
+    }
+
+    @Override
+    public int getOffset() {
+        return pos;
+    }
+
+    /**
+     * Returns the character at the given offset, regardless of the current position.
+     */
+    public char charAt(int offset) {
+        return buffer[offset];
+    }
+
+    /**
+     * Returns the source text between the two offsets, the end being exclusive.
+     */
+    public String slice(int start, int end) {
+        return new String(buffer, start, end - start);
+    }
+
+    @Override
+    public char peek() {
+        if (pos >= length)
+            throw new Error(new EOFException()); // throw as unchecked exception
+
+        return buffer[pos];
+    }
+
+    @Override
+    public char next() {
+        char p = peek();
+        pos++;
+        if (p == '\n') {
+            line++;
+            column = 1;
+        } else
+            column++;
+
+        return p;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return pos < length;
+    }
+
+    @Override
+    public void close() {
+        // the mapping is released with the buffer, nothing to close
+    }
+
+}
@@ -0,0 +1,120 @@
+package lexer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link Tokeniser} which lexes on its own thread, ahead of the consumer calling {@link #nextToken()}.
+ * Tokens are handed over through a bounded single-producer/single-consumer ring. The thread is started by
+ * {@link #start(Scanner)}, once the tokeniser is fully constructed.
+ *
+ * Lexing errors are printed and counted only once the consumer takes the token that caused them, so the output
+ * and the error count are exactly those of a plain Tokeniser, however far ahead the lexing thread runs.
+ */
+public final class PipelinedTokeniser extends Tokeniser {
+
+    private static final int CAPACITY = 1024; // must be a power of two
+    private static final int SPINS_BEFORE_PARKING = 100;
+
+    private final Token[] tokens = new Token[CAPACITY];
+    private final String[] errors = new String[CAPACITY];
+
+    // next slot to take, only written by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // next slot to fill, only written by the lexing thread
+    private final AtomicLong tail = new AtomicLong();
+
+    // error reported while lexing the current token, only used by the lexing thread
+    private String pendingError;
+    private volatile Throwable failure;
+
+    // once reached, the end of file is returned for ever without going through the ring
+    private Token eof;
+
+    public static PipelinedTokeniser start(Scanner scanner) {
+        PipelinedTokeniser tokeniser = new PipelinedTokeniser(scanner);
+        Thread thread = new Thread(tokeniser::produce, "tokeniser");
+        thread.setDaemon(true); // the consumer may stop before the end of the file
+        thread.start();
+        return tokeniser;
+    }
+
+    private PipelinedTokeniser(Scanner scanner) {
+        super(scanner);
+    }
+
+    @Override
+    public Token nextToken() {
+        if (eof != null) {
+            return eof;
+        }
+
+        long slot = head.get();
+        for (int spins = 0; slot == tail.get(); spins++) {
+            if (failure != null && slot == tail.get()) {
+                rethrow(failure);
+            }
+            backOff(spins);
+        }
+
+        int i = (int) slot & (CAPACITY - 1);
+        Token t = tokens[i];
+        String error = errors[i];
+        tokens[i] = null;
+        errors[i] = null;
+        head.set(slot + 1);
+
+        if (error != null) {
+            super.reportError(error);
+        }
+        if (t.category == Token.Category.EOF) {
+            eof = t;
+        }
+        return t;
+    }
+
+    @Override
+    void reportError(String msg) {
+        pendingError = msg;
+    }
+
+    private void produce() {
+        try {
+            Token t;
+            do {
+                t = super.nextToken();
+
+                long slot = tail.get();
+                for (int spins = 0; slot - head.get() == CAPACITY; spins++) {
+                    backOff(spins);
+                }
+
+                int i = (int) slot & (CAPACITY - 1);
+                tokens[i] = t;
+                errors[i] = pendingError;
+                pendingError = null;
+                tail.set(slot + 1);
+            } while (t.category != Token.Category.EOF);
+        } catch (Throwable e) {
+            failure = e; // rethrown on the consumer side once it has taken every token before the failure
+        }
+    }
+
+    private static void backOff(int spins) {
+        if (spins < SPINS_BEFORE_PARKING) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(10_000);
+        }
+    }
+
+    private static void rethrow(Throwable t) {
+        if (t instanceof RuntimeException re) {
+            throw re;
+        }
+        if (t instanceof Error e) {
+            throw e;
+        }
+        throw new Error(t);
+    }
+}
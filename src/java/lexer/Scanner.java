@@ -12,11 +12,18 @@ public class Scanner {
 
     private int line = 1;
     private int column = 1;
+    private int offset = 0;
 
     public Scanner(File source) throws FileNotFoundException {
         input = new BufferedReader(new FileReader(source));
     }
 
+    /**
+     * For subclasses that do not read through a {@link BufferedReader}.
+     */
+    protected Scanner() {
+    }
+
 
     public int getColumn() {
         return column;
@@ -26,6 +33,13 @@ public class Scanner {
         return line;
     }
 
+    /**
+     * Returns the number of characters consumed so far, i.e. the offset of the next character in the source.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
 
     private int read() {
         int i;
@@ -52,6 +66,7 @@ public class Scanner {
     public char next() {
         char p = peek();
         peeked = -1;
+        offset++;
         if (p == '\n') {
             line++;
             column = 1;
@@ -0,0 +1,118 @@
+package lexer;
+
+import java.util.Arrays;
+
+/**
+ * A compact stream of tokens, stored as parallel primitive arrays instead of one {@link Token} object per token.
+ * Each token is identified by its index in the stream.
+ *
+ * The stream is filled lazily from the tokeniser as tokens are requested, so lexing errors are reported in the same
+ * order relative to parsing errors as when pulling tokens one by one. The text of identifiers and literals is not
+ * kept: it is sliced from the source buffer of the {@link MappedScanner} when asked for.
+ */
+public final class TokenStream {
+
+    private static final Token.Category[] CATEGORIES = Token.Category.values();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Tokeniser tokeniser;
+    private final MappedScanner source;
+
+    private byte[] categories = new byte[INITIAL_CAPACITY];
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] columns = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * The tokeniser must read from the given scanner, on the calling thread.
+     */
+    public TokenStream(Tokeniser tokeniser, MappedScanner source) {
+        if (tokeniser instanceof PipelinedTokeniser)
+            throw new IllegalArgumentException("a token stream scans on the calling thread");
+        this.tokeniser = tokeniser;
+        this.source = source;
+    }
+
+    /**
+     * Returns the number of tokens read from the tokeniser so far.
+     */
+    public int size() {
+        return size;
+    }
+
+    public Token.Category category(int i) {
+        ensure(i);
+        return CATEGORIES[categories[i]];
+    }
+
+    public int line(int i) {
+        ensure(i);
+        return lines[i];
+    }
+
+    public int column(int i) {
+        ensure(i);
+        return columns[i];
+    }
+
+    /**
+     * Returns the data of the i^th token, as {@link Token#data} would hold it.
+     */
+    public String data(int i) {
+        ensure(i);
+        return switch (CATEGORIES[categories[i]]) {
+            case IDENTIFIER, INT_LITERAL -> source.slice(offsets[i], offsets[i] + lengths[i]);
+            case CHAR_LITERAL, STRING_LITERAL -> unquote(offsets[i], offsets[i] + lengths[i]);
+            default -> "";
+        };
+    }
+
+    /**
+     * Builds a {@link Token} for the i^th token, e.g. to report an error.
+     */
+    public Token token(int i) {
+        return new Token(category(i), data(i), line(i), column(i));
+    }
+
+    /**
+     * Reads tokens from the tokeniser until the i^th one is available.
+     * Past the end of the file, the tokeniser keeps producing EOF tokens.
+     */
+    private void ensure(int i) {
+        while (size <= i) {
+            Token.Category category = tokeniser.scan();
+            if (size == categories.length) {
+                grow();
+            }
+            categories[size] = (byte) category.ordinal();
+            offsets[size] = tokeniser.tokenStart();
+            lengths[size] = tokeniser.tokenEnd() - tokeniser.tokenStart();
+            lines[size] = tokeniser.tokenLine();
+            columns[size] = tokeniser.tokenColumn();
+            size++;
+        }
+    }
+
+    private void grow() {
+        int capacity = categories.length * 2;
+        categories = Arrays.copyOf(categories, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        columns = Arrays.copyOf(columns, capacity);
+    }
+
+    /**
+     * Decodes a valid char or string literal spanning the given offsets, quotes included.
+     */
+    private String unquote(int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start - 2);
+        for (int p = start + 1; p < end - 1; p++) {
+            char c = source.charAt(p);
+            sb.append(c == '\\' ? (char) Tokeniser.escapedChar(source.charAt(++p)) : c);
+        }
+        return sb.toString();
+    }
+}
@@ -2,9 +2,7 @@ package lexer;
 
 import util.CompilerPass;
 
-import java.util.Map;
-import java.util.Optional;
-import java.util.Set;
+import java.util.Arrays;
 
 /**
  * @author cdubach
@@ -13,252 +11,375 @@ public class Tokeniser extends CompilerPass {
 
     private final Scanner scanner;
 
-    private static final Set<Character> SPECIAL_CHARS = Set.of(
-            '`', '~', '@', '!', '$', '#', '^', '*', '%', '&', '(', ')', '[', ']',
-            '{', '}', '<', '>', '+', '=', '_', '-', '|', '/', ';', ':', ',', '.', '?'
-    );
-
-    private static final Map<String, Token.Category> KEYWORD_MAP = Map.ofEntries(
-            Map.entry("int", Token.Category.INT),
-            Map.entry("void", Token.Category.VOID),
-            Map.entry("char", Token.Category.CHAR),
-            Map.entry("if", Token.Category.IF),
-            Map.entry("else", Token.Category.ELSE),
-            Map.entry("while", Token.Category.WHILE),
-            Map.entry("return", Token.Category.RETURN),
-            Map.entry("struct", Token.Category.STRUCT),
-            Map.entry("sizeof", Token.Category.SIZEOF),
-            Map.entry("continue", Token.Category.CONTINUE),
-            Map.entry("break", Token.Category.BREAK),
-            Map.entry("class", Token.Category.CLASS),
-            Map.entry("extends", Token.Category.EXTENDS),
-            Map.entry("new", Token.Category.NEW)
-    );
+    // character classes, only ASCII characters are classified through the table
+    private static final byte LETTER = 1;
+    private static final byte DIGIT = 1 << 1;
+    private static final byte SPECIAL = 1 << 2;
+    private static final byte WHITESPACE = 1 << 3;
+    private static final byte UNDERSCORE = 1 << 4;
+
+    private static final byte IDENT_START = LETTER | UNDERSCORE;
+    private static final byte IDENT_PART = LETTER | DIGIT | UNDERSCORE;
+    private static final byte CHAR_LITERAL_BODY = LETTER | DIGIT | SPECIAL | WHITESPACE;
+
+    private static final byte[] CHAR_CLASS = new byte[128];
+
+    // tokens made of a single character which can never be the start of a longer token
+    private static final Token.Category[] SINGLE_CHAR_TOKENS = new Token.Category[128];
+
+    // maps an escaped character to its value, or -1 if the escape sequence is invalid
+    private static final int[] ESCAPES = new int[128];
+
+    private static final String[] KEYWORDS = {
+            "int", "void", "char", "if", "else", "while", "return", "struct", "sizeof", "continue", "break",
+            "class", "extends", "new"
+    };
+
+    private static final Token.Category[] KEYWORD_CATEGORIES = {
+            Token.Category.INT, Token.Category.VOID, Token.Category.CHAR, Token.Category.IF, Token.Category.ELSE,
+            Token.Category.WHILE, Token.Category.RETURN, Token.Category.STRUCT, Token.Category.SIZEOF,
+            Token.Category.CONTINUE, Token.Category.BREAK, Token.Category.CLASS, Token.Category.EXTENDS,
+            Token.Category.NEW
+    };
+
+    // perfect hash table for the keywords, see keywordHash
+    private static final int KEYWORD_TABLE_SIZE = 32;
+    private static final char[][] KEYWORD_TABLE = new char[KEYWORD_TABLE_SIZE][];
+    private static final Token.Category[] KEYWORD_TABLE_CATEGORIES = new Token.Category[KEYWORD_TABLE_SIZE];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) CHAR_CLASS[c] |= LETTER;
+        for (char c = 'A'; c <= 'Z'; c++) CHAR_CLASS[c] |= LETTER;
+        for (char c = '0'; c <= '9'; c++) CHAR_CLASS[c] |= DIGIT;
+        CHAR_CLASS['_'] |= UNDERSCORE;
+        for (char c : "`~@!$#^*%&()[]{}<>+=_-|/;:,.?".toCharArray()) CHAR_CLASS[c] |= SPECIAL;
+        for (char c = 0; c < 128; c++) {
+            if (Character.isWhitespace(c)) CHAR_CLASS[c] |= WHITESPACE;
+        }
+
+        SINGLE_CHAR_TOKENS['{'] = Token.Category.LBRA;
+        SINGLE_CHAR_TOKENS['}'] = Token.Category.RBRA;
+        SINGLE_CHAR_TOKENS['('] = Token.Category.LPAR;
+        SINGLE_CHAR_TOKENS[')'] = Token.Category.RPAR;
+        SINGLE_CHAR_TOKENS['['] = Token.Category.LSBR;
+        SINGLE_CHAR_TOKENS[']'] = Token.Category.RSBR;
+        SINGLE_CHAR_TOKENS[';'] = Token.Category.SC;
+        SINGLE_CHAR_TOKENS[','] = Token.Category.COMMA;
+        SINGLE_CHAR_TOKENS['+'] = Token.Category.PLUS;
+        SINGLE_CHAR_TOKENS['-'] = Token.Category.MINUS;
+        SINGLE_CHAR_TOKENS['*'] = Token.Category.ASTERISK;
+        SINGLE_CHAR_TOKENS['%'] = Token.Category.REM;
+        SINGLE_CHAR_TOKENS['.'] = Token.Category.DOT;
+
+        Arrays.fill(ESCAPES, -1);
+        ESCAPES['a'] = '\u0007'; // '\a'
+        ESCAPES['b'] = '\b';
+        ESCAPES['n'] = '\n';
+        ESCAPES['r'] = '\r';
+        ESCAPES['t'] = '\t';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\''] = '\'';
+        ESCAPES['"'] = '\"';
+        ESCAPES['0'] = '\0';
+
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            char[] kw = KEYWORDS[i].toCharArray();
+            int h = keywordHash(kw, kw.length);
+            assert KEYWORD_TABLE[h] == null : "keyword hash collision";
+            KEYWORD_TABLE[h] = kw;
+            KEYWORD_TABLE_CATEGORIES[h] = KEYWORD_CATEGORIES[i];
+        }
+    }
+
+    // holds the characters of the identifier or literal being lexed
+    private char[] lexeme = new char[64];
+    private int lexemeLength;
+    private final StringBuilder stringLiteral = new StringBuilder();
 
     public Tokeniser(Scanner scanner) {
         this.scanner = scanner;
     }
 
+    // position, start offset and value of the last token scanned, see scan()
+    private int tokenLine;
+    private int tokenColumn;
+    private int tokenStart;
+    private char charLiteral;
+
     public Token nextToken() {
+        Token.Category category = scan();
+        return switch (category) {
+            case IDENTIFIER, INT_LITERAL ->
+                    new Token(category, new String(lexeme, 0, lexemeLength), tokenLine, tokenColumn);
+            case CHAR_LITERAL -> new Token(category, Character.toString(charLiteral), tokenLine, tokenColumn);
+            case STRING_LITERAL -> new Token(category, stringLiteral.toString(), tokenLine, tokenColumn);
+            default -> new Token(category, tokenLine, tokenColumn);
+        };
+    }
 
-        int line = scanner.getLine();
-        int col = scanner.getColumn();
+    /**
+     * Scans the next token without building a {@link Token} for it.
+     * The position of the token is left in tokenLine/tokenColumn and its source offsets are tokenStart and the
+     * current offset of the scanner. The data of identifiers and literals is left in the lexeme buffers.
+     */
+    Token.Category scan() {
 
-        if (!scanner.hasNext()) {
-            return new Token(Token.Category.EOF, line, col);
-        }
+        char c;
+
+        // skip whitespace and comments
+        while (true) {
+            tokenLine = scanner.getLine();
+            tokenColumn = scanner.getColumn();
+            tokenStart = scanner.getOffset();
+
+            if (!scanner.hasNext()) {
+                return Token.Category.EOF;
+            }
 
-        char c = scanner.next();
+            c = scanner.next();
 
-        if (Character.isWhitespace(c)) {
-            return nextToken();
+            if (isWhitespace(c)) {
+                continue;
+            }
+
+            if (c == '/' && scanner.hasNext()) {
+                char next = scanner.peek();
+                // Single line comment
+                if (next == '/') {
+                    scanner.next();
+                    while (scanner.hasNext() && scanner.peek() != '\n') {
+                        scanner.next();
+                    }
+                    continue;
+                }
+                // Multiline comment
+                if (next == '*') {
+                    scanner.next();
+                    if (skipMultilineComment()) {
+                        continue;
+                    }
+                    return invalidToken(c);
+                }
+            }
+            break;
+        }
+
+        if (c < 128 && SINGLE_CHAR_TOKENS[c] != null) {
+            return SINGLE_CHAR_TOKENS[c];
         }
 
         return switch (c) {
-            case '{' -> new Token(Token.Category.LBRA, line, col);
-            case '}' -> new Token(Token.Category.RBRA, line, col);
-            case '(' -> new Token(Token.Category.LPAR, line, col);
-            case ')' -> new Token(Token.Category.RPAR, line, col);
-            case '[' -> new Token(Token.Category.LSBR, line, col);
-            case ']' -> new Token(Token.Category.RSBR, line, col);
-            case ';' -> new Token(Token.Category.SC, line, col);
-            case ',' -> new Token(Token.Category.COMMA, line, col);
-            case '+' -> new Token(Token.Category.PLUS, line, col);
-            case '-' -> new Token(Token.Category.MINUS, line, col);
-            case '*' -> new Token(Token.Category.ASTERISK, line, col);
-            case '%' -> new Token(Token.Category.REM, line, col);
-            case '.' -> new Token(Token.Category.DOT, line, col);
-            case '=' -> currentOrCombined(c, '=', Token.Category.ASSIGN, Token.Category.EQ, line, col);
-            case '&' -> currentOrCombined(c, '&', Token.Category.AND, Token.Category.LOGAND, line, col);
-            case '|' -> currentOrCombined(c, '|', Token.Category.INVALID, Token.Category.LOGOR, line, col);
-            case '!' -> currentOrCombined(c, '=', Token.Category.INVALID, Token.Category.NE, line, col);
-            case '<' -> currentOrCombined(c, '=', Token.Category.LT, Token.Category.LE, line, col);
-            case '>' -> currentOrCombined(c, '=', Token.Category.GT, Token.Category.GE, line, col);
-            case '/' -> handleCommentOrDivision(c, line, col);
-            case '#' -> handleIncludeKeyword(c, line, col);
-            case '\'' -> handleCharLiteral(c, line, col);
-            case '"' -> handleStringLiteral(c, line, col);
+            case '=' -> currentOrCombined(c, '=', Token.Category.ASSIGN, Token.Category.EQ);
+            case '&' -> currentOrCombined(c, '&', Token.Category.AND, Token.Category.LOGAND);
+            case '|' -> currentOrCombined(c, '|', Token.Category.INVALID, Token.Category.LOGOR);
+            case '!' -> currentOrCombined(c, '=', Token.Category.INVALID, Token.Category.NE);
+            case '<' -> currentOrCombined(c, '=', Token.Category.LT, Token.Category.LE);
+            case '>' -> currentOrCombined(c, '=', Token.Category.GT, Token.Category.GE);
+            case '/' -> Token.Category.DIV;
+            case '#' -> handleIncludeKeyword(c);
+            case '\'' -> handleCharLiteral(c);
+            case '"' -> handleStringLiteral(c);
             default ->
-                    isASCIIDigit(c) ? handleIntLiteral(c, line, col) :
-                            (isASCIILetter(c) || c == '_') ? handleIdentifier(c, line, col) :
-                                    invalidToken(c, line, col);
+                    hasClass(c, DIGIT) ? handleIntLiteral(c) :
+                            hasClass(c, IDENT_START) ? handleIdentifier(c) :
+                                    invalidToken(c);
         };
     }
 
-    private void error(char c, int line, int col) {
-        String msg = "Lexing error: unrecognised character ("+c+") at "+line+":"+col;
+    int tokenLine() {
+        return tokenLine;
+    }
+
+    int tokenColumn() {
+        return tokenColumn;
+    }
+
+    int tokenStart() {
+        return tokenStart;
+    }
+
+    int tokenEnd() {
+        return scanner.getOffset();
+    }
+
+    private void error(char c) {
+        String msg = "Lexing error: unrecognised character ("+c+") at "+tokenLine+":"+tokenColumn;
+        reportError(msg);
+    }
+
+    /**
+     * Prints and counts a lexing error. Overridden by {@link PipelinedTokeniser} to defer the report.
+     */
+    void reportError(String msg) {
         System.out.println(msg);
         incError();
     }
 
-    private boolean isASCIILetter(char c) {
-        return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z');
+    private static boolean hasClass(char c, byte charClass) {
+        return c < 128 && (CHAR_CLASS[c] & charClass) != 0;
     }
 
-    private boolean isASCIIDigit(char c) {
-        return '0' <= c && c <= '9';
+    private static boolean isWhitespace(char c) {
+        return c < 128 ? (CHAR_CLASS[c] & WHITESPACE) != 0 : Character.isWhitespace(c);
     }
 
     private boolean isValidInCharLiteral(char c) {
-        return isASCIILetter(c) || isASCIIDigit(c) || SPECIAL_CHARS.contains(c) || c == '"' || Character.isWhitespace(c);
+        return hasClass(c, CHAR_LITERAL_BODY) || c == '"' || isWhitespace(c);
     }
 
     private boolean isValidInStringLiteral(char c) {
-        return isASCIILetter(c) || isASCIIDigit(c) || SPECIAL_CHARS.contains(c) || c == '\'' || Character.isWhitespace(c);
+        return hasClass(c, CHAR_LITERAL_BODY) || c == '\'' || isWhitespace(c);
     }
 
-    private boolean isValidIdentifierChar(char c) {
-        return isASCIILetter(c) || isASCIIDigit(c) || c == '_';
+    static int escapedChar(char c) {
+        return c < 128 ? ESCAPES[c] : -1;
     }
 
-    private Token invalidToken(char c, int line, int col) {
-        error(c, line, col);
-        return new Token(Token.Category.INVALID, line, col);
+    private static int keywordHash(char[] chars, int length) {
+        return (chars[0] + 25 * chars[length - 1] + length) & (KEYWORD_TABLE_SIZE - 1);
     }
 
-    private Token currentOrCombined(char c, char expectedNext, Token.Category currentCategory, Token.Category combinedCategory, int line, int col) {
+    private Token.Category invalidToken(char c) {
+        error(c);
+        return Token.Category.INVALID;
+    }
+
+    private Token.Category currentOrCombined(char c, char expectedNext, Token.Category currentCategory, Token.Category combinedCategory) {
         if (scanner.hasNext() && scanner.peek() == expectedNext) {
             scanner.next();
-            return new Token(combinedCategory, line, col);
+            return combinedCategory;
         }
         if (currentCategory == Token.Category.INVALID)
-            error(c, line, col);
-        return new Token(currentCategory, line, col);
+            error(c);
+        return currentCategory;
     }
 
-    private Token handleCommentOrDivision(char c, int line, int col) {
-        if (scanner.hasNext()) {
-            char next = scanner.peek();
-            // Single line comment
-            if (next == '/') {
-                scanner.next();
-                while (scanner.hasNext() && scanner.peek() != '\n') {
-                    scanner.next();
-                }
-                return nextToken();
-
-            }
-            // Multiline comment
-            if (next == '*') {
-                scanner.next();
-                while (scanner.hasNext()) {
-                    if (scanner.next() == '*' && scanner.hasNext() && scanner.next() == '/') {
-                        return nextToken();
-                    }
-                }
-                return invalidToken(c, line, col);
+    /**
+     * Skips the body of a multiline comment, the opening delimiter having been consumed already.
+     * Returns false if the comment is not terminated.
+     */
+    private boolean skipMultilineComment() {
+        while (scanner.hasNext()) {
+            if (scanner.next() == '*' && scanner.hasNext() && scanner.next() == '/') {
+                return true;
             }
         }
-
-        return new Token(Token.Category.DIV, line, col);
+        return false;
     }
 
-    private Token handleIncludeKeyword(char c, int line, int col) {
+    private Token.Category handleIncludeKeyword(char c) {
         String ideal = "include";
         for (int i = 0; i < ideal.length(); i++) {
             if (!scanner.hasNext()) {
-                return invalidToken(c, line, col);
+                return invalidToken(c);
             }
 
             char nextChar = scanner.next();
             if (nextChar != ideal.charAt(i)) {
-                return invalidToken(c, line, col);
+                return invalidToken(c);
             }
         }
-        return new Token(Token.Category.INCLUDE, line, col);
+        return Token.Category.INCLUDE;
     }
 
-    private Optional<Character> getEscapedChar(char escapedChar) {
-        return switch (escapedChar) {
-            case 'a' -> Optional.of('\u0007'); // '\a'
-            case 'b' -> Optional.of('\b');
-            case 'n' -> Optional.of('\n');
-            case 'r' -> Optional.of('\r');
-            case 't' -> Optional.of('\t');
-            case '\\' -> Optional.of('\\');
-            case '\'' -> Optional.of('\'');
-            case '"' -> Optional.of('\"');
-            case '0' -> Optional.of('\0');
-            default -> Optional.empty(); // invalid escape character
-        };
-    }
-
-    private Token handleCharLiteral(char c, int line, int col) {
+    private Token.Category handleCharLiteral(char c) {
         if (!scanner.hasNext()) {
-            return invalidToken(c, line, col);
+            return invalidToken(c);
         }
         // First char inside
         char next = scanner.next();
         // Check if escape character
         if (next == '\\') {
             if (!scanner.hasNext()) {
-                return invalidToken(c, line, col);
+                return invalidToken(c);
             }
-            next = scanner.next();
-            Optional<Character> escapeChar = getEscapedChar(next);
-            if (escapeChar.isEmpty()) {
-                return invalidToken(c, line, col);
+            int escapeChar = escapedChar(scanner.next());
+            if (escapeChar == -1) {
+                return invalidToken(c);
             }
-            next = escapeChar.get(); // Correct escape character
+            next = (char) escapeChar; // Correct escape character
         } else if (!isValidInCharLiteral(next)) {
-            return invalidToken(c, line, col);
+            return invalidToken(c);
         }
 
         // closing quote check
         if (!scanner.hasNext() || scanner.peek() != '\'') {
-            return invalidToken(c, line, col);
+            return invalidToken(c);
         }
         scanner.next();
-        return new Token(Token.Category.CHAR_LITERAL, Character.toString(next), line, col);
+        charLiteral = next;
+        return Token.Category.CHAR_LITERAL;
     }
 
-    private Token handleStringLiteral(char c, int line, int col) {
-        StringBuilder sb = new StringBuilder();
+    private Token.Category handleStringLiteral(char c) {
+        StringBuilder sb = stringLiteral;
+        sb.setLength(0);
         while (scanner.hasNext()) {
             char next = scanner.next();
             // End of string
             if (next == '"') {
-                return new Token(Token.Category.STRING_LITERAL, sb.toString(), line, col);
+                return Token.Category.STRING_LITERAL;
             }
             // Escape characters
             if (next == '\\') {
                 if (!scanner.hasNext()) {
-                    return invalidToken(c, line, col);
+                    return invalidToken(c);
                 }
-                next = scanner.next();
-                Optional<Character> escapeChar = getEscapedChar(next);
-                if (escapeChar.isEmpty()) {
-                    return invalidToken(c, line, col);
+                int escapeChar = escapedChar(scanner.next());
+                if (escapeChar == -1) {
+                    return invalidToken(c);
                 }
-                sb.append(escapeChar.get());
+                sb.append((char) escapeChar);
             } else if (isValidInStringLiteral(next)) { // not escape but valid
                 sb.append(next);
             } else { // invalid
-                return invalidToken(c, line, col);
+                return invalidToken(c);
             }
         }
-        return invalidToken(c, line, col);
+        return invalidToken(c);
+    }
+
+    private void appendToLexeme(char c) {
+        if (lexemeLength == lexeme.length) {
+            lexeme = Arrays.copyOf(lexeme, lexeme.length * 2);
+        }
+        lexeme[lexemeLength++] = c;
     }
 
-    private Token handleIntLiteral(char c, int line, int col) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(c);
-        while (scanner.hasNext() && isASCIIDigit(scanner.peek())) {
-            sb.append(scanner.next());
+    private Token.Category handleIntLiteral(char c) {
+        lexemeLength = 0;
+        appendToLexeme(c);
+        while (scanner.hasNext() && hasClass(scanner.peek(), DIGIT)) {
+            appendToLexeme(scanner.next());
         }
-        return new Token(Token.Category.INT_LITERAL, sb.toString(), line, col);
+        return Token.Category.INT_LITERAL;
     }
 
-    private Token handleIdentifier(char c, int line, int col) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(c);
-        while (scanner.hasNext() && isValidIdentifierChar(scanner.peek())) {
-            sb.append(scanner.next());
+    private Token.Category handleIdentifier(char c) {
+        lexemeLength = 0;
+        appendToLexeme(c);
+        while (scanner.hasNext() && hasClass(scanner.peek(), IDENT_PART)) {
+            appendToLexeme(scanner.next());
+        }
+        Token.Category keyword = matchKeyword();
+        return keyword != null ? keyword : Token.Category.IDENTIFIER;
+    }
+
+    /**
+     * Returns the keyword category of the current lexeme, or null if the lexeme is not a keyword.
+     */
+    private Token.Category matchKeyword() {
+        int h = keywordHash(lexeme, lexemeLength);
+        char[] kw = KEYWORD_TABLE[h];
+        if (kw == null || kw.length != lexemeLength) {
+            return null;
+        }
+        for (int i = 0; i < lexemeLength; i++) {
+            if (kw[i] != lexeme[i]) {
+                return null;
+            }
         }
-        String s = sb.toString();
-        return KEYWORD_MAP.containsKey(s) ?
-                new Token(KEYWORD_MAP.get(s), line, col) :
-                new Token(Token.Category.IDENTIFIER, s, line, col);
+        return KEYWORD_TABLE_CATEGORIES[h];
     }
 
 }
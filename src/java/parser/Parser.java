@@ -4,6 +4,7 @@ package parser;
 import ast.*;
 import lexer.Token;
 import lexer.Token.Category;
+import lexer.TokenStream;
 import lexer.Tokeniser;
 import util.CompilerPass;
 
@@ -17,10 +18,20 @@ public class Parser extends CompilerPass {
 
     private Token token;
 
-    private final Queue<Token> buffer = new LinkedList<>();
+    // ring buffer of the tokens looked ahead, the grammar never needs more than two
+    private static final int LOOKAHEAD_CAPACITY = 4;
+    private final Token[] buffer = new Token[LOOKAHEAD_CAPACITY];
+    private int bufferHead = 0;
+    private int bufferSize = 0;
 
     private final Tokeniser tokeniser;
 
+    // compact token stream, null when pulling tokens from the tokeniser
+    private final TokenStream stream;
+
+    // index of the current token, in the stream or since the start of the file
+    private int cursor = -1;
+
     private static final Category[] EXP_FIRST_SET = {
         Category.IDENTIFIER, Category.INT_LITERAL, Category.LPAR, Category.MINUS, Category.PLUS,
         Category.ASTERISK, Category.AND, Category.CHAR_LITERAL, Category.STRING_LITERAL, Category.SIZEOF, Category.NEW
@@ -36,8 +47,57 @@ public class Parser extends CompilerPass {
         Category.LBRA, Category.WHILE, Category.IF, Category.RETURN, Category.CONTINUE, Category.BREAK
     };
 
+    /**
+     * How expressions are parsed. Both build the same AST, recursive descent is kept to diff-test the two.
+     */
+    public enum ExprParsing {
+        PRECEDENCE_CLIMBING, RECURSIVE_DESCENT
+    }
+
+    private ExprParsing exprParsing = ExprParsing.PRECEDENCE_CLIMBING;
+
+    // binding power of the binary operators, 0 for the tokens which are not one
+    private static final int[] PRECEDENCE = new int[Category.values().length];
+    private static final Op[] BINARY_OPS = new Op[Category.values().length];
+    private static final int ASSIGN_PRECEDENCE = 1;
+
+    private static void binaryOp(Category category, int precedence, Op op) {
+        PRECEDENCE[category.ordinal()] = precedence;
+        BINARY_OPS[category.ordinal()] = op;
+    }
+
+    static {
+        PRECEDENCE[Category.ASSIGN.ordinal()] = ASSIGN_PRECEDENCE;
+        binaryOp(Category.LOGOR, 2, Op.OR);
+        binaryOp(Category.LOGAND, 3, Op.AND);
+        binaryOp(Category.EQ, 4, Op.EQ);
+        binaryOp(Category.NE, 4, Op.NE);
+        binaryOp(Category.LT, 5, Op.LT);
+        binaryOp(Category.LE, 5, Op.LE);
+        binaryOp(Category.GT, 5, Op.GT);
+        binaryOp(Category.GE, 5, Op.GE);
+        binaryOp(Category.PLUS, 6, Op.ADD);
+        binaryOp(Category.MINUS, 6, Op.SUB);
+        binaryOp(Category.ASTERISK, 7, Op.MUL);
+        binaryOp(Category.DIV, 7, Op.DIV);
+        binaryOp(Category.REM, 7, Op.MOD);
+    }
+
     public Parser(Tokeniser tokeniser) {
         this.tokeniser = tokeniser;
+        this.stream = null;
+    }
+
+    /**
+     * Parses from a compact token stream, walking it with an index instead of building a {@link Token} per token.
+     */
+    public Parser(TokenStream stream) {
+        this.tokeniser = null;
+        this.stream = stream;
+    }
+
+    public void setExprParsing(ExprParsing exprParsing) {
+        this.exprParsing = exprParsing;
     }
 
     /**
@@ -50,11 +110,11 @@ public class Parser extends CompilerPass {
     }
 
     //private int error = 0;
-    private Token lastErrorToken;
+    private int lastErrorCursor = -1;
 
     private void error(Category... expected) {
 
-        if (lastErrorToken == token) {
+        if (lastErrorCursor == cursor) {
             // skip this error, same token causing trouble
             return;
         }
@@ -63,11 +123,33 @@ public class Parser extends CompilerPass {
         for (Category e : expected) {
             sj.add(e.toString());
         }
-        String msg = "Parsing error: expected (" + sj + ") found (" + token + ") at " + token.position;
+        Token found = stream != null ? stream.token(cursor) : token;
+        String msg = "Parsing error: expected (" + sj + ") found (" + found + ") at " + found.position;
         System.out.println(msg);
 
         incError();
-        lastErrorToken = token;
+        lastErrorCursor = cursor;
+    }
+
+    /**
+     * Category of the current token.
+     */
+    private Category category() {
+        return stream != null ? stream.category(cursor) : token.category;
+    }
+
+    /**
+     * Category of the i^th token after the current one, i should be >= 1
+     */
+    private Category lookAheadCategory(int i) {
+        return stream != null ? stream.category(cursor + i) : lookAhead(i).category;
+    }
+
+    /**
+     * Data of the current token.
+     */
+    private String data() {
+        return stream != null ? stream.data(cursor) : token.data;
     }
 
     /**
@@ -75,19 +157,13 @@ public class Parser extends CompilerPass {
      * i should be >= 1
      */
     private Token lookAhead(int i) {
+        assert i <= LOOKAHEAD_CAPACITY;
         // ensures the buffer has the element we want to look ahead
-        while (buffer.size() < i)
-        buffer.add(tokeniser.nextToken());
-
-        int cnt = 1;
-        for (Token t : buffer) {
-            if (cnt == i)
-            return t;
-            cnt++;
+        while (bufferSize < i) {
+            buffer[(bufferHead + bufferSize) & (LOOKAHEAD_CAPACITY - 1)] = tokeniser.nextToken();
+            bufferSize++;
         }
-
-        assert false; // should never reach this
-        return tokeniser.nextToken();
+        return buffer[(bufferHead + i - 1) & (LOOKAHEAD_CAPACITY - 1)];
     }
 
 
@@ -95,30 +171,44 @@ public class Parser extends CompilerPass {
      * Consumes the next token from the tokeniser or the buffer if not empty.
      */
     private void nextToken() {
-        token = !buffer.isEmpty() ? buffer.remove() : tokeniser.nextToken();
+        cursor++;
+        if (stream != null) {
+            return;
+        }
+        if (bufferSize > 0) {
+            token = buffer[bufferHead];
+            buffer[bufferHead] = null;
+            bufferHead = (bufferHead + 1) & (LOOKAHEAD_CAPACITY - 1);
+            bufferSize--;
+        } else {
+            token = tokeniser.nextToken();
+        }
     }
 
     /**
      * If the current token is equals to the expected one, then skip it, otherwise report an error.
+     * Returns the data of the token.
      */
-    private Token expect(Category... expected) {
+    private String expect(Category... expected) {
+        Category category = category();
         for (Category e : expected) {
-            if (e == token.category) {
-                Token ret = token;
+            if (e == category) {
+                String ret = data();
                 nextToken();
                 return ret;
             }
         }
         error(expected);
-        return token;
+        return data();
     }
 
     /**
      * Returns true if the current token is equals to any of the expected ones.
      */
     private boolean accept(Category... expected) {
+        Category category = category();
         for (Category e : expected) {
-            if (e == token.category)
+            if (e == category)
             return true;
         }
         return false;
@@ -135,32 +225,32 @@ public class Parser extends CompilerPass {
         List<Decl> decls = new ArrayList<>();
 
         while (accept(TYPE_FIRST_SET)) {
-            if (token.category == Category.STRUCT &&
-            lookAhead(1).category == Category.IDENTIFIER &&
-            lookAhead(2).category == Category.LBRA) {
+            if (category() == Category.STRUCT &&
+            lookAheadCategory(1) == Category.IDENTIFIER &&
+            lookAheadCategory(2) == Category.LBRA) {
                 decls.add(parseStructDecl());
-            } else if (token.category == Category.CLASS &&
-            lookAhead(1).category == Category.IDENTIFIER &&
-            (lookAhead(2).category == Category.EXTENDS || lookAhead(2).category == Category.LBRA)) {
+            } else if (category() == Category.CLASS &&
+            lookAheadCategory(1) == Category.IDENTIFIER &&
+            (lookAheadCategory(2) == Category.EXTENDS || lookAheadCategory(2) == Category.LBRA)) {
                 decls.add(parseClassDecl());
             } else {
                 Type type = parseType();
-                Token id = expect(Category.IDENTIFIER);
+                String id = expect(Category.IDENTIFIER);
                 if (accept(Category.LPAR)) {
                     nextToken();
                     List<VarDecl> params = parseParams();
                     expect(Category.RPAR);
                     if (accept(Category.SC)) {
                         nextToken();
-                        decls.add(new FunDecl(type, id.data, params));
+                        decls.add(new FunDecl(type, id, params));
                     } else if (accept(Category.LBRA)) {
                         Block block = parseBlock();
-                        decls.add(new FunDef(type, id.data, params, block));
+                        decls.add(new FunDef(type, id, params, block));
                     } else {
                         error(Category.SC, Category.LBRA);
                     }
                 } else {
-                    decls.add(parseVariableDeclHelper(type, id.data, true));
+                    decls.add(parseVariableDeclHelper(type, id, true));
                 }
             }
         }
@@ -190,14 +280,14 @@ public class Parser extends CompilerPass {
         Type base;
         if (accept(Category.STRUCT)) {
             nextToken();
-            Token id = expect(Category.IDENTIFIER);
-            base = new StructType(id.data);
+            String id = expect(Category.IDENTIFIER);
+            base = new StructType(id);
         } else if (accept(Category.CLASS)){
             nextToken();
-            Token id = expect(Category.IDENTIFIER);
-            base = new ClassType(id.data);
+            String id = expect(Category.IDENTIFIER);
+            base = new ClassType(id);
         } else {
-            switch (token.category) {
+            switch (category()) {
                 case INT -> base = BaseType.INT;
                 case CHAR -> base = BaseType.CHAR;
                 default -> base = BaseType.VOID;
@@ -218,8 +308,8 @@ public class Parser extends CompilerPass {
      */
     private StructTypeDecl parseStructDecl() { 
         expect(Category.STRUCT);
-        Token id = expect(Category.IDENTIFIER);
-        StructType type = new StructType(id.data);
+        String id = expect(Category.IDENTIFIER);
+        StructType type = new StructType(id);
         expect(Category.LBRA);
         List<VarDecl> fields = new ArrayList<>();
         do {
@@ -236,8 +326,8 @@ public class Parser extends CompilerPass {
      */
     private VarDecl parseVarDecl() {
         Type type = parseType();
-        Token id = expect(Category.IDENTIFIER);
-        return parseVariableDeclHelper(type, id.data, true);
+        String id = expect(Category.IDENTIFIER);
+        return parseVariableDeclHelper(type, id, true);
     }
 
     private VarDecl parseVariableDeclHelper(Type type, String name, boolean expectSemicolon) {
@@ -245,9 +335,9 @@ public class Parser extends CompilerPass {
 
         while (accept(Category.LSBR)) {
             nextToken();
-            Token arraySize = expect(Category.INT_LITERAL);
+            String arraySize = expect(Category.INT_LITERAL);
             expect(Category.RSBR);
-            arraySizes.push(Integer.parseInt(arraySize.data));
+            arraySizes.push(Integer.parseInt(arraySize));
         }
 
         while (!arraySizes.isEmpty()) {
@@ -266,13 +356,13 @@ public class Parser extends CompilerPass {
     */
     private Decl parseClassDecl() {
         expect(Category.CLASS);
-        Token classId = expect(Category.IDENTIFIER);
-        ClassType classType = new ClassType(classId.data);
+        String classId = expect(Category.IDENTIFIER);
+        ClassType classType = new ClassType(classId);
         ClassType extendsType = null;
         if (accept(Category.EXTENDS)) {
             nextToken();
-            Token extendsId = expect(Category.IDENTIFIER);
-            extendsType = new ClassType(extendsId.data);
+            String extendsId = expect(Category.IDENTIFIER);
+            extendsType = new ClassType(extendsId);
         }
         expect(Category.LBRA);
         List<VarDecl> fields = new ArrayList<>();
@@ -282,12 +372,12 @@ public class Parser extends CompilerPass {
 
         while (accept(TYPE_FIRST_SET)) {
             Type t = parseType();
-            Token id = expect(Category.IDENTIFIER);
+            String id = expect(Category.IDENTIFIER);
             if (parsingFields && (accept(Category.LSBR) || accept(Category.SC))) {
-                fields.add(parseVariableDeclHelper(t, id.data, true));
+                fields.add(parseVariableDeclHelper(t, id, true));
             } else {
                 parsingFields = false;
-                functions.add(parseFundef(t, id.data));
+                functions.add(parseFundef(t, id));
             }
 
         }
@@ -318,14 +408,14 @@ public class Parser extends CompilerPass {
 
         if (accept(TYPE_FIRST_SET)) {
             Type t1 = parseType();
-            Token id1 = expect(Category.IDENTIFIER);
+            String id1 = expect(Category.IDENTIFIER);
 
-            params.add(parseVariableDeclHelper(t1, id1.data, false));
+            params.add(parseVariableDeclHelper(t1, id1, false));
             while (accept(Category.COMMA)) {
                 nextToken();
                 Type t2 = parseType();
-                Token id2 = expect(Category.IDENTIFIER);
-                params.add(parseVariableDeclHelper(t2, id2.data, false));
+                String id2 = expect(Category.IDENTIFIER);
+                params.add(parseVariableDeclHelper(t2, id2, false));
             }
         }
 
@@ -406,7 +496,28 @@ public class Parser extends CompilerPass {
     }
 
     private Expr parseExp() {
-        return parseAssign();
+        return exprParsing == ExprParsing.PRECEDENCE_CLIMBING ? parseBinary(ASSIGN_PRECEDENCE) : parseAssign();
+    }
+
+    /**
+     * Precedence climbing: parses a unary expression followed by any binary operators binding at least as tightly
+     * as minPrecedence. Assignment is right associative, every other operator left associative.
+     */
+    private Expr parseBinary(int minPrecedence) {
+        Expr lhs = parseUnary();
+        while (true) {
+            Category category = category();
+            int precedence = PRECEDENCE[category.ordinal()];
+            if (precedence == 0 || precedence < minPrecedence) {
+                return lhs;
+            }
+            nextToken();
+            if (category == Category.ASSIGN) {
+                lhs = new Assign(lhs, parseBinary(precedence));
+            } else {
+                lhs = new BinOp(lhs, BINARY_OPS[category.ordinal()], parseBinary(precedence + 1));
+            }
+        }
     }
 
     private Expr parseAssign() {
@@ -442,7 +553,7 @@ public class Parser extends CompilerPass {
     private Expr parseEquality() {
         Expr lhs = parseComparison();
         while (accept(Category.EQ, Category.NE)) {
-            Op op = token.category == Category.EQ ? Op.EQ : Op.NE;
+            Op op = category() == Category.EQ ? Op.EQ : Op.NE;
             nextToken();
             Expr rhs = parseComparison();
             lhs = new BinOp(lhs, op, rhs);
@@ -453,7 +564,7 @@ public class Parser extends CompilerPass {
     private Expr parseComparison() {
         Expr lhs = parseAddSub();
         while (accept(Category.LT, Category.LE, Category.GT, Category.GE)) {
-            Op op = switch (token.category) {
+            Op op = switch (category()) {
                 case LT -> Op.LT;
                 case LE -> Op.LE;
                 case GT -> Op.GT;
@@ -469,7 +580,7 @@ public class Parser extends CompilerPass {
     private Expr parseAddSub() {
         Expr lhs = parseMulDivRem();
         while (accept(Category.PLUS, Category.MINUS)) {
-            Op op = token.category == Category.PLUS ? Op.ADD: Op.SUB;
+            Op op = category() == Category.PLUS ? Op.ADD: Op.SUB;
             nextToken();
             Expr rhs = parseMulDivRem();
             lhs = new BinOp(lhs, op, rhs);
@@ -480,7 +591,7 @@ public class Parser extends CompilerPass {
     private Expr parseMulDivRem() {
         Expr lhs = parseUnary();
         while (accept(Category.ASTERISK, Category.DIV, Category.REM)) {
-            Op op = switch (token.category) {
+            Op op = switch (category()) {
                 case ASTERISK -> Op.MUL;
                 case DIV -> Op.DIV;
                 default -> Op.MOD;
@@ -496,17 +607,17 @@ public class Parser extends CompilerPass {
         if (accept(Category.NEW)) {
             nextToken();
             expect(Category.CLASS);
-            Token id = expect(Category.IDENTIFIER);
+            String id = expect(Category.IDENTIFIER);
             expect(Category.LPAR);
             expect(Category.RPAR);
-            return new NewInstance(new ClassType(id.data));
+            return new NewInstance(new ClassType(id));
         }
 
         if (accept(Category.PLUS, Category.MINUS, Category.ASTERISK, Category.AND)) {
-            Token t = token;
+            Category op = category();
             nextToken();
             Expr expr = parseUnary();
-            return switch (t.category) {
+            return switch (op) {
                 case PLUS -> new BinOp(new IntLiteral(0), Op.ADD, expr);
                 case MINUS -> new BinOp(new IntLiteral(0), Op.SUB, expr);
                 case ASTERISK -> new ValueAtExpr(expr);
@@ -532,7 +643,7 @@ public class Parser extends CompilerPass {
     private Expr parsePrimary() {
         Expr primary;
         if (accept(Category.IDENTIFIER)) {
-            Token t = expect(Category.IDENTIFIER);
+            String t = expect(Category.IDENTIFIER);
             if (accept(Category.LPAR)) { // function call
                 nextToken();
                 List<Expr> args = new ArrayList<>();
@@ -544,19 +655,19 @@ public class Parser extends CompilerPass {
                     }
                 }
                 expect(Category.RPAR);
-                primary = new FunCallExpr(t.data, args);
+                primary = new FunCallExpr(t, args);
             } else {
-                primary = new VarExpr(t.data);
+                primary = new VarExpr(t);
             }
         } else if (accept(Category.INT_LITERAL)) {
-            Token t = expect(Category.INT_LITERAL);
-            primary = new IntLiteral(Integer.parseInt(t.data));
+            String t = expect(Category.INT_LITERAL);
+            primary = new IntLiteral(Integer.parseInt(t));
         } else if (accept(Category.CHAR_LITERAL)) {
-            Token t = expect(Category.CHAR_LITERAL);
-            primary = new ChrLiteral(t.data.charAt(0));
+            String t = expect(Category.CHAR_LITERAL);
+            primary = new ChrLiteral(t.charAt(0));
         } else if (accept(Category.STRING_LITERAL)) {
-            Token t = expect(Category.STRING_LITERAL);
-            primary = new StrLiteral(t.data);
+            String t = expect(Category.STRING_LITERAL);
+            primary = new StrLiteral(t);
         } else if (accept(Category.SIZEOF)) {
             nextToken();
             expect(Category.LPAR);
@@ -580,11 +691,11 @@ public class Parser extends CompilerPass {
                 expr = new ArrayAccessExpr(expr, index);
             } else {
                 nextToken();
-                Token id = expect(Category.IDENTIFIER);
+                String id = expect(Category.IDENTIFIER);
                 if (accept(Category.LPAR)) {
                     nextToken();
                     
-                    String funcallName = id.data;
+                    String funcallName = id;
                     List<Expr> args = new ArrayList<>();
                     if (!accept(Category.RPAR)) {
                         args.add(parseExp());
@@ -596,7 +707,7 @@ public class Parser extends CompilerPass {
                     expect(Category.RPAR);
                     expr = new InstanceFunCallExpr(expr, new FunCallExpr(funcallName, args));
                 } else {
-                    expr = new FieldAccessExpr(expr, id.data);
+                    expr = new FieldAccessExpr(expr, id);
                 }
             }
         }
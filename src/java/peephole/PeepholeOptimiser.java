@@ -0,0 +1,71 @@
+package peephole;
+
+import gen.asm.AssemblyItem;
+import gen.asm.AssemblyPass;
+import gen.asm.AssemblyProgram;
+import gen.asm.Instruction;
+
+import java.util.*;
+
+/**
+ * A peephole optimiser: rewrites short runs of consecutive instructions into cheaper ones, following a list of
+ * {@link PeepholeRule}s, until none of them applies anymore.
+ *
+ * The code generator runs it both before and after register allocation. Before, the temporaries are virtual registers
+ * used once, so a rule may fold one away when its uses are all in the window. After, only the rules which do not need
+ * to know which registers are dead still apply, such as the removal of moves from a register to itself.
+ *
+ * The optimiser counts how many times each rule applied, over all the programs it went through.
+ */
+public final class PeepholeOptimiser implements AssemblyPass {
+
+    private final List<PeepholeRule> rules;
+    private final Map<String, Integer> hits = new LinkedHashMap<>();
+
+    public PeepholeOptimiser() {
+        this(PeepholeRules.ALL);
+    }
+
+    public PeepholeOptimiser(List<PeepholeRule> rules) {
+        this.rules = List.copyOf(rules);
+        rules.forEach(rule -> hits.put(rule.name(), 0));
+    }
+
+    /**
+     * Returns how many times each rule applied, in the order the rules are tried.
+     */
+    public Map<String, Integer> hitCounts() {
+        return Collections.unmodifiableMap(hits);
+    }
+
+    @Override
+    public AssemblyProgram apply(AssemblyProgram program) {
+        program.textSections.forEach(section -> optimise(section.items));
+        return program;
+    }
+
+    private void optimise(List<AssemblyItem> items) {
+        Window window = new Window(items);
+        boolean changed;
+        do {
+            changed = false;
+            for (int i = 0; i < items.size(); i++) {
+                if (!(items.get(i) instanceof Instruction)) {
+                    continue;
+                }
+                for (PeepholeRule rule : rules) {
+                    if (!window.moveTo(i, rule.length())) {
+                        continue;
+                    }
+                    List<Instruction> replacement = rule.rewrite(window);
+                    if (replacement != null) {
+                        window.replace(replacement);
+                        hits.merge(rule.name(), 1, Integer::sum);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        } while (changed);
+    }
+}
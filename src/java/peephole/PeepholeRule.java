@@ -0,0 +1,84 @@
+package peephole;
+
+import gen.asm.Instruction;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A rewrite of a few consecutive instructions, identified by a name for the hit counts of the
+ * {@link PeepholeOptimiser}.
+ *
+ * Rules are written with the {@code of} methods, which match a window of instructions of the given classes, in order,
+ * and pass them to the rewrite with their types:
+ * <pre>
+ *     PeepholeRule.of("li-zero", Instruction.LoadImmediate.class, Instruction.class, (w, li, insn) -> ...)
+ * </pre>
+ * A rewrite returns the instructions replacing the window, or null if the rule does not apply.
+ */
+public interface PeepholeRule {
+
+    String name();
+
+    /**
+     * Returns the number of instructions in the window.
+     */
+    int length();
+
+    /**
+     * Returns the instructions replacing the window, or null if the rule does not apply.
+     */
+    List<Instruction> rewrite(Window window);
+
+    @FunctionalInterface
+    interface Rewrite1<A> {
+        List<Instruction> rewrite(Window window, A a);
+    }
+
+    @FunctionalInterface
+    interface Rewrite2<A, B> {
+        List<Instruction> rewrite(Window window, A a, B b);
+    }
+
+    @FunctionalInterface
+    interface Rewrite3<A, B, C> {
+        List<Instruction> rewrite(Window window, A a, B b, C c);
+    }
+
+    static <A extends Instruction> PeepholeRule of(String name, Class<A> a, Rewrite1<A> rewrite) {
+        return new Pattern(name, List.of(a), w -> rewrite.rewrite(w, a.cast(w.get(0))));
+    }
+
+    static <A extends Instruction, B extends Instruction> PeepholeRule of(String name, Class<A> a, Class<B> b,
+                                                                          Rewrite2<A, B> rewrite) {
+        return new Pattern(name, List.of(a, b), w -> rewrite.rewrite(w, a.cast(w.get(0)), b.cast(w.get(1))));
+    }
+
+    static <A extends Instruction, B extends Instruction, C extends Instruction> PeepholeRule of(
+            String name, Class<A> a, Class<B> b, Class<C> c, Rewrite3<A, B, C> rewrite) {
+        return new Pattern(name, List.of(a, b, c),
+                w -> rewrite.rewrite(w, a.cast(w.get(0)), b.cast(w.get(1)), c.cast(w.get(2))));
+    }
+
+    /**
+     * A rule applying to the windows whose instructions are instances of the classes of its shape.
+     */
+    record Pattern(String name, List<Class<? extends Instruction>> shape,
+                   Function<Window, List<Instruction>> body) implements PeepholeRule {
+
+        @Override
+        public int length() {
+            return shape.size();
+        }
+
+        @Override
+        public List<Instruction> rewrite(Window window) {
+            for (int k = 0; k < shape.size(); k++) {
+                if (!shape.get(k).isInstance(window.get(k))) {
+                    return null;
+                }
+            }
+            return body.apply(window);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package peephole;
+
+import gen.asm.Instruction;
+import gen.asm.Instruction.*;
+import gen.asm.Label;
+import gen.asm.OpCode;
+import gen.asm.Register;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rules of the peephole optimiser, in the order they are tried.
+ *
+ * Most rules clean up after the templates of the code generator, which compute every value into a fresh register: a
+ * constant loaded and then added, a value copied right after being computed, a boolean computed and then branched on.
+ */
+final class PeepholeRules {
+
+    private PeepholeRules() {}
+
+    static final List<PeepholeRule> ALL = List.of(
+
+            // add x,x,$zero and friends do nothing
+            PeepholeRule.of("self-move", Instruction.class, (w, insn) ->
+                    copySource(insn) != null && copySource(insn).equals(insn.def()) ? List.of() : null),
+
+            // j L; L: falls through anyway, as does a branch
+            PeepholeRule.of("jump-to-next", ControlFlow.class, (w, insn) ->
+                    target(insn) != null && w.isFollowedBy(target(insn)) ? List.of() : null),
+
+            // li t,0; op ..t.. reads $zero instead
+            PeepholeRule.of("li-zero", LoadImmediate.class, Instruction.class, (w, li, insn) ->
+                    li.opcode == OpCode.LI && li.imm == 0 && insn.uses().contains(li.dst) && w.isDead(li.dst)
+                            ? List.of(withUses(insn, li.dst, Register.Arch.zero))
+                            : null),
+
+            // li t,c; add d,x,t is addi d,x,c
+            PeepholeRule.of("li-operand", LoadImmediate.class, TernaryArithmetic.class, (w, li, insn) ->
+                    li.opcode == OpCode.LI && w.isDead(li.dst) ? withImmediate(insn, li.dst, li.imm) : null),
+
+            // op t,..; add d,t,$zero computes into d directly
+            PeepholeRule.of("def-copy", Instruction.class, Instruction.class, (w, insn, copy) -> {
+                Register t = insn.def();
+                if (t == null || !t.equals(copySource(copy)) || !w.isDead(t) || !hasReplaceableDef(insn)) {
+                    return null;
+                }
+                return List.of(withDef(insn, copy.def()));
+            }),
+
+            // add t,x,$zero; op ..t.. reads x instead
+            PeepholeRule.of("copy-use", Instruction.class, Instruction.class, (w, copy, insn) -> {
+                Register x = copySource(copy);
+                Register t = copy.def();
+                if (x == null || !insn.uses().contains(t) || !w.isDead(t)) {
+                    return null;
+                }
+                return List.of(withUses(insn, t, x));
+            }),
+
+            // la a,L; ...; la b,L in the same block reuses a
+            PeepholeRule.of("la-reuse", LoadAddress.class, (w, la) -> {
+                if (!w.isDefinedOnce(la.dst)) {
+                    return null;
+                }
+                for (Instruction insn : w.precedingInBlock()) {
+                    if (insn instanceof LoadAddress prev && prev.label.name.equals(la.label.name)
+                            && w.isDefinedOnce(prev.dst)) {
+                        w.rename(la.dst, prev.dst);
+                        return List.of();
+                    }
+                }
+                return null;
+            }),
+
+            // sw r,k(b); lw s,k(b) reads back r
+            PeepholeRule.of("store-load", Store.class, Load.class, (w, sw, lw) -> {
+                if (sw.opcode != OpCode.SW || lw.opcode != OpCode.LW || sw.imm != lw.imm || !sw.op2.equals(lw.op2)) {
+                    return null;
+                }
+                return lw.op1.equals(sw.op1)
+                        ? List.of(sw)
+                        : List.of(sw, new TernaryArithmetic(OpCode.ADD, lw.op1, sw.op1, Register.Arch.zero));
+            }),
+
+            // xor t,a,b; beqz t,L is beq a,b,L
+            PeepholeRule.of("xor-branch", TernaryArithmetic.class, UnaryBranch.class, (w, xor, branch) -> {
+                if (xor.opcode != OpCode.XOR || !branch.src.equals(xor.dst) || !w.isDead(xor.dst)) {
+                    return null;
+                }
+                if (branch.opcode == OpCode.BEQZ) {
+                    return List.of(new BinaryBranch(OpCode.BEQ, xor.src1, xor.src2, branch.label));
+                } else if (branch.opcode == OpCode.BNEZ) {
+                    return List.of(new BinaryBranch(OpCode.BNE, xor.src1, xor.src2, branch.label));
+                }
+                return null;
+            }),
+
+            // sltu t,$zero,x; beqz t,L is beqz x,L, and sltiu t,x,1; beqz t,L is bnez x,L
+            PeepholeRule.of("test-branch", Instruction.class, UnaryBranch.class, (w, test, branch) -> {
+                if (test.def() == null || !branch.src.equals(test.def()) || !w.isDead(test.def())) {
+                    return null;
+                }
+                boolean onZero = branch.opcode == OpCode.BEQZ || branch.opcode == OpCode.BNEZ;
+                if (onZero && test instanceof TernaryArithmetic sltu && sltu.opcode == OpCode.SLTU
+                        && sltu.src1.equals(Register.Arch.zero)) {
+                    return List.of(new UnaryBranch((OpCode.UnaryBranch) branch.opcode, sltu.src2, branch.label));
+                }
+                if (onZero && test instanceof ArithmeticWithImmediate sltiu && sltiu.opcode == OpCode.SLTIU
+                        && sltiu.imm == 1) {
+                    return List.of(new UnaryBranch(negated(branch.opcode), sltiu.src, branch.label));
+                }
+                return null;
+            }),
+
+            // slt t,a,b; xori t,t,1; beqz t,L is slt t,a,b; bnez t,L
+            PeepholeRule.of("negated-branch", TernaryArithmetic.class, ArithmeticWithImmediate.class,
+                    UnaryBranch.class, (w, slt, xori, branch) -> {
+                        if ((slt.opcode != OpCode.SLT && slt.opcode != OpCode.SLTU) || xori.opcode != OpCode.XORI
+                                || xori.imm != 1 || !xori.src.equals(slt.dst) || !branch.src.equals(xori.dst)
+                                || negated(branch.opcode) == null || !w.isDead(slt.dst) || !w.isDead(xori.dst)) {
+                            return null;
+                        }
+                        return List.of(slt, new UnaryBranch(negated(branch.opcode), slt.dst, branch.label));
+                    })
+    );
+
+    /**
+     * Returns the register copied by a move, or null if insn is not one.
+     */
+    static Register copySource(Instruction insn) {
+        return switch (insn) {
+            case ArithmeticWithImmediate i when (i.opcode == OpCode.ADDI || i.opcode == OpCode.ADDIU
+                    || i.opcode == OpCode.ORI) && i.imm == 0 -> i.src;
+            case TernaryArithmetic t when t.opcode == OpCode.ADD || t.opcode == OpCode.ADDU
+                    || t.opcode == OpCode.OR -> {
+                if (t.src2.equals(Register.Arch.zero)) {
+                    yield t.src1;
+                }
+                yield t.src1.equals(Register.Arch.zero) ? t.src2 : null;
+            }
+            default -> null;
+        };
+    }
+
+    private static Label target(Instruction insn) {
+        return switch (insn) {
+            case Jump j when j.opcode == OpCode.J || j.opcode == OpCode.B -> j.label;
+            case UnaryBranch b when b.opcode == OpCode.BEQZ || b.opcode == OpCode.BNEZ -> b.label;
+            case BinaryBranch b -> b.label;
+            default -> null;
+        };
+    }
+
+    private static OpCode.UnaryBranch negated(OpCode opcode) {
+        if (opcode == OpCode.BEQZ) {
+            return OpCode.BNEZ;
+        } else if (opcode == OpCode.BNEZ) {
+            return OpCode.BEQZ;
+        }
+        return null;
+    }
+
+    private static final Map<OpCode.TernaryArithmetic, OpCode.ArithmeticWithImmediate> SIGNED_IMMEDIATE_FORMS =
+            Map.of(OpCode.ADD, OpCode.ADDI, OpCode.ADDU, OpCode.ADDIU, OpCode.SLT, OpCode.SLTI,
+                    OpCode.SLTU, OpCode.SLTIU);
+
+    private static final Map<OpCode.TernaryArithmetic, OpCode.ArithmeticWithImmediate> UNSIGNED_IMMEDIATE_FORMS =
+            Map.of(OpCode.AND, OpCode.ANDI, OpCode.OR, OpCode.ORI, OpCode.XOR, OpCode.XORI);
+
+    /**
+     * Returns insn with the register t, holding imm, as immediate operand, or null if there is no such instruction.
+     * Immediates are 16 bits, sign extended except for the logical operations.
+     */
+    private static List<Instruction> withImmediate(TernaryArithmetic insn, Register t, int imm) {
+        OpCode.TernaryArithmetic op = (OpCode.TernaryArithmetic) insn.opcode;
+        boolean commutes = op != OpCode.SLT && op != OpCode.SLTU;
+        Register other;
+        if (insn.src2.equals(t) && !insn.src1.equals(t)) {
+            other = insn.src1;
+        } else if (commutes && insn.src1.equals(t) && !insn.src2.equals(t)) {
+            other = insn.src2;
+        } else {
+            return null;
+        }
+
+        if (op == OpCode.SUB || op == OpCode.SUBU) {
+            if (!insn.src2.equals(t) || !isSigned16(-imm)) {
+                return null;
+            }
+            OpCode.ArithmeticWithImmediate add = op == OpCode.SUB ? OpCode.ADDI : OpCode.ADDIU;
+            return List.of(new ArithmeticWithImmediate(add, insn.dst, other, -imm));
+        }
+        if (SIGNED_IMMEDIATE_FORMS.containsKey(op) && isSigned16(imm)) {
+            return List.of(new ArithmeticWithImmediate(SIGNED_IMMEDIATE_FORMS.get(op), insn.dst, other, imm));
+        }
+        if (UNSIGNED_IMMEDIATE_FORMS.containsKey(op) && imm >= 0 && imm <= 0xFFFF) {
+            return List.of(new ArithmeticWithImmediate(UNSIGNED_IMMEDIATE_FORMS.get(op), insn.dst, other, imm));
+        }
+        return null;
+    }
+
+    private static boolean isSigned16(int imm) {
+        return imm >= Short.MIN_VALUE && imm <= Short.MAX_VALUE;
+    }
+
+    private static boolean hasReplaceableDef(Instruction insn) {
+        return switch (insn) {
+            case TernaryArithmetic ignored -> true;
+            case UnaryArithmetic ignored -> true;
+            case ArithmeticWithImmediate ignored -> true;
+            case Load ignored -> true;
+            case LoadImmediate ignored -> true;
+            case LoadAddress ignored -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Returns insn defining dst instead of its destination register, with the same operands.
+     */
+    static Instruction withDef(Instruction insn, Register dst) {
+        return switch (insn) {
+            case TernaryArithmetic t -> new TernaryArithmetic((OpCode.TernaryArithmetic) t.opcode, dst, t.src1, t.src2);
+            case UnaryArithmetic u -> new UnaryArithmetic((OpCode.UnaryArithmetic) u.opcode, dst);
+            case ArithmeticWithImmediate a ->
+                    new ArithmeticWithImmediate((OpCode.ArithmeticWithImmediate) a.opcode, dst, a.src, a.imm);
+            case Load l -> new Load((OpCode.Load) l.opcode, dst, l.op2, l.imm);
+            case LoadImmediate li -> new LoadImmediate((OpCode.LoadImmediate) li.opcode, dst, li.imm);
+            case LoadAddress la -> new LoadAddress(dst, la.label);
+            default -> throw new IllegalStateException("No destination register in " + insn);
+        };
+    }
+
+    /**
+     * Returns insn reading the register to wherever it read the register from, its destination being unchanged.
+     */
+    static Instruction withUses(Instruction insn, Register from, Register to) {
+        Instruction renamed = insn.rebuild(Map.of(from, to));
+        return from.equals(insn.def()) ? withDef(renamed, from) : renamed;
+    }
+}
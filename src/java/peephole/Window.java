@@ -0,0 +1,173 @@
+package peephole;
+
+import gen.asm.*;
+
+import java.util.*;
+
+/**
+ * A run of consecutive instructions of a text section, as seen by a {@link PeepholeRule}.
+ *
+ * The instructions of a window may be separated by comments, but never by a label: control may reach the instructions
+ * after a label from elsewhere, so they cannot be rewritten together with the ones before it.
+ *
+ * The window also knows how many times each virtual register is used in the section. A virtual register whose uses
+ * all lie in the window, after it is defined there, is dead after it, and its value may be folded away. Architectural
+ * registers are never considered dead, so the rules relying on this only apply before register allocation.
+ */
+public final class Window {
+
+    private final List<AssemblyItem> items;
+    private final Map<Register, Integer> uses = new HashMap<>();
+    private final Map<Register, Integer> defs = new HashMap<>();
+
+    private int[] positions = new int[0]; // index in items of each instruction of the window
+
+    Window(List<AssemblyItem> items) {
+        this.items = items;
+        for (AssemblyItem item : items) {
+            if (item instanceof Instruction insn) {
+                count(insn, 1);
+            }
+        }
+    }
+
+    private void count(Instruction insn, int delta) {
+        for (Register reg : insn.uses()) {
+            if (reg.isVirtual()) {
+                uses.merge(reg, delta, Integer::sum);
+            }
+        }
+        if (insn.def() != null && insn.def().isVirtual()) {
+            defs.merge(insn.def(), delta, Integer::sum);
+        }
+    }
+
+    /**
+     * Makes the window cover the given number of instructions from the item at index start. Returns false if there
+     * are not that many instructions before the next label.
+     */
+    boolean moveTo(int start, int length) {
+        if (positions.length != length) {
+            positions = new int[length];
+        }
+        int k = 0;
+        for (int i = start; i < items.size() && k < length; i++) {
+            switch (items.get(i)) {
+                case Instruction ignored -> positions[k++] = i;
+                case Comment ignored -> {}
+                default -> {
+                    return false;
+                }
+            }
+        }
+        return k == length;
+    }
+
+    /**
+     * Replaces the instructions of the window with the given ones, at the position of the first one.
+     */
+    void replace(List<Instruction> replacement) {
+        for (int k = positions.length - 1; k >= 0; k--) {
+            count((Instruction) items.remove(positions[k]), -1);
+        }
+        items.addAll(positions[0], replacement);
+        replacement.forEach(insn -> count(insn, 1));
+    }
+
+    public int length() {
+        return positions.length;
+    }
+
+    public Instruction get(int k) {
+        return (Instruction) items.get(positions[k]);
+    }
+
+    /**
+     * Returns whether reg is a virtual register whose value is not used after the window, i.e. all its uses are in
+     * the window and come after an instruction of the window defining it. A use before that definition, as in
+     * addi x,x,1, reads a value flowing into the window, possibly around a loop from the window itself.
+     */
+    public boolean isDead(Register reg) {
+        if (!reg.isVirtual()) {
+            return false;
+        }
+        int inWindow = 0;
+        boolean defined = false;
+        for (int k = 0; k < positions.length; k++) {
+            Instruction insn = get(k);
+            for (Register use : insn.uses()) {
+                if (use.equals(reg)) {
+                    if (!defined) {
+                        return false;
+                    }
+                    inWindow++;
+                }
+            }
+            defined |= reg.equals(insn.def());
+        }
+        return uses.getOrDefault(reg, 0) == inWindow;
+    }
+
+    /**
+     * Returns whether reg is a virtual register defined by a single instruction of the section. Such a register holds
+     * the same value wherever its definition dominates.
+     */
+    public boolean isDefinedOnce(Register reg) {
+        return reg.isVirtual() && defs.getOrDefault(reg, 0) == 1;
+    }
+
+    /**
+     * Returns whether label is attached to the instruction right after the window, so that jumping to it from the end
+     * of the window is the same as falling through.
+     */
+    public boolean isFollowedBy(Label label) {
+        for (int i = positions[positions.length - 1] + 1; i < items.size(); i++) {
+            switch (items.get(i)) {
+                case Label l when l.name.equals(label.name) -> {
+                    return true;
+                }
+                case Instruction ignored -> {
+                    return false;
+                }
+                default -> {}
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the instructions executed right before the window on every path reaching it, nearest first: those back
+     * to the previous label or control flow instruction.
+     */
+    public List<Instruction> precedingInBlock() {
+        List<Instruction> preceding = new ArrayList<>();
+        for (int i = positions[0] - 1; i >= 0; i--) {
+            switch (items.get(i)) {
+                case Instruction.ControlFlow ignored -> {
+                    return preceding;
+                }
+                case Instruction insn -> preceding.add(insn);
+                case Label ignored -> {
+                    return preceding;
+                }
+                default -> {}
+            }
+        }
+        return preceding;
+    }
+
+    /**
+     * Replaces every occurrence of the register from with the register to in the section.
+     */
+    public void rename(Register from, Register to) {
+        Map<Register, Register> renaming = Map.of(from, to);
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i) instanceof Instruction insn && insn.registers().contains(from)) {
+                Instruction renamed = insn.rebuild(renaming);
+                count(insn, -1);
+                count(renamed, 1);
+                items.set(i, renamed);
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package regalloc;
+
+import gen.asm.*;
+
+import java.util.*;
+
+/**
+ * Control flow graph of a text section over basic blocks, i.e. maximal straight-line runs of instructions.
+ *
+ * Blocks are numbered densely in program order, block 0 being the entry. Instructions are numbered densely too,
+ * labels and other text items being dropped. Edges are stored in arrays indexed by block (compressed rows), so
+ * walking them does not allocate.
+ *
+ * The edges are the ones {@link CFGBuilder} builds between instructions: every block falls through to the next one,
+ * except after a jump, and branches and jumps also go to their target. Targets outside of the section are ignored.
+ */
+public final class BasicBlockCFG {
+
+    private final Instruction[] instructions;
+    private final int numBlocks;
+    private final int[] blockStart; // first instruction of each block, blockStart[numBlocks] is the end
+
+    // successors of block b are succ[succStart[b] .. succStart[b + 1]), likewise for the predecessors
+    private final int[] succStart;
+    private final int[] succ;
+    private final int[] predStart;
+    private final int[] pred;
+
+    private final int[] postorder;
+    private final int[] reversePostorder;
+
+    public BasicBlockCFG(AssemblyProgram.TextSection section) {
+        // collect the instructions and the instruction following each label
+        List<Instruction> insns = new ArrayList<>();
+        Map<String, Integer> labelTargets = new HashMap<>();
+        List<Label> pendingLabels = new ArrayList<>();
+        for (AssemblyItem item : section.items) {
+            switch (item) {
+                case Instruction insn -> {
+                    for (Label label : pendingLabels) {
+                        labelTargets.put(label.toString(), insns.size());
+                    }
+                    pendingLabels.clear();
+                    insns.add(insn);
+                }
+                case Label label -> pendingLabels.add(label);
+                default -> {}
+            }
+        }
+        instructions = insns.toArray(new Instruction[0]);
+        int n = instructions.length;
+
+        // find the leaders: the first instruction, branch targets and instructions following a branch or jump
+        int[] branchTargets = new int[n];
+        boolean[] leaders = new boolean[n + 1];
+        leaders[0] = true;
+        for (int i = 0; i < n; i++) {
+            Label target = switch (instructions[i]) {
+                case Instruction.BinaryBranch b -> b.label;
+                case Instruction.UnaryBranch b -> b.label;
+                case Instruction.Jump j when j.opcode == OpCode.J -> j.label;
+                default -> null;
+            };
+            Integer targetIndex = target == null ? null : labelTargets.get(target.toString());
+            branchTargets[i] = targetIndex == null ? -1 : targetIndex;
+            if (targetIndex != null) {
+                leaders[targetIndex] = true;
+                leaders[i + 1] = true;
+            }
+        }
+
+        int[] blockOf = new int[n];
+        int[] starts = new int[n + 1];
+        int blocks = 0;
+        for (int i = 0; i < n; i++) {
+            if (leaders[i]) {
+                starts[blocks++] = i;
+            }
+            blockOf[i] = blocks - 1;
+        }
+        starts[blocks] = n;
+        numBlocks = blocks;
+        blockStart = Arrays.copyOf(starts, blocks + 1);
+
+        // at most two successors per block: the fall through and the branch or jump target
+        succStart = new int[numBlocks + 1];
+        int[] edges = new int[2 * numBlocks];
+        int[] predCount = new int[numBlocks];
+        int numEdges = 0;
+        for (int b = 0; b < numBlocks; b++) {
+            succStart[b] = numEdges;
+            int last = blockStart[b + 1] - 1;
+            int taken = branchTargets[last] >= 0 ? blockOf[branchTargets[last]] : -1;
+            boolean jumps = instructions[last].opcode == OpCode.J && taken >= 0;
+            int fallThrough = b + 1 < numBlocks && !jumps ? b + 1 : -1;
+            if (fallThrough >= 0) {
+                edges[numEdges++] = fallThrough;
+                predCount[fallThrough]++;
+            }
+            if (taken >= 0 && taken != fallThrough) {
+                edges[numEdges++] = taken;
+                predCount[taken]++;
+            }
+        }
+        succStart[numBlocks] = numEdges;
+        succ = Arrays.copyOf(edges, numEdges);
+
+        predStart = new int[numBlocks + 1];
+        for (int b = 0; b < numBlocks; b++) {
+            predStart[b + 1] = predStart[b] + predCount[b];
+        }
+        pred = new int[numEdges];
+        int[] fill = Arrays.copyOf(predStart, numBlocks);
+        for (int b = 0; b < numBlocks; b++) {
+            for (int e = succStart[b]; e < succStart[b + 1]; e++) {
+                pred[fill[succ[e]]++] = b;
+            }
+        }
+
+        postorder = computePostorder();
+        reversePostorder = new int[postorder.length];
+        for (int i = 0; i < postorder.length; i++) {
+            reversePostorder[i] = postorder[postorder.length - 1 - i];
+        }
+    }
+
+    /**
+     * Iterative depth first search from the entry block.
+     */
+    private int[] computePostorder() {
+        int[] order = new int[numBlocks];
+        int size = 0;
+        if (numBlocks == 0) {
+            return order;
+        }
+
+        boolean[] visited = new boolean[numBlocks];
+        int[] stack = new int[numBlocks];
+        int[] nextEdge = new int[numBlocks]; // next successor edge to explore for each block on the stack
+        int top = 0;
+        stack[0] = 0;
+        nextEdge[0] = succStart[0];
+        visited[0] = true;
+        while (top >= 0) {
+            int b = stack[top];
+            if (nextEdge[b] < succStart[b + 1]) {
+                int s = succ[nextEdge[b]++];
+                if (!visited[s]) {
+                    visited[s] = true;
+                    nextEdge[s] = succStart[s];
+                    stack[++top] = s;
+                }
+            } else {
+                order[size++] = b;
+                top--;
+            }
+        }
+        return Arrays.copyOf(order, size);
+    }
+
+    public int instructionCount() {
+        return instructions.length;
+    }
+
+    public Instruction instruction(int i) {
+        return instructions[i];
+    }
+
+    public int blockCount() {
+        return numBlocks;
+    }
+
+    /**
+     * Returns the index of the first instruction of block b.
+     */
+    public int blockStart(int b) {
+        return blockStart[b];
+    }
+
+    /**
+     * Returns the index following the last instruction of block b.
+     */
+    public int blockEnd(int b) {
+        return blockStart[b + 1];
+    }
+
+    /**
+     * Returns the block containing the i^th instruction.
+     */
+    public int blockOf(int i) {
+        int b = Arrays.binarySearch(blockStart, 0, numBlocks, i);
+        return b >= 0 ? b : -b - 2;
+    }
+
+    public int edgeCount() {
+        return succ.length;
+    }
+
+    public int successorCount(int b) {
+        return succStart[b + 1] - succStart[b];
+    }
+
+    public int successor(int b, int k) {
+        return succ[succStart[b] + k];
+    }
+
+    public int predecessorCount(int b) {
+        return predStart[b + 1] - predStart[b];
+    }
+
+    public int predecessor(int b, int k) {
+        return pred[predStart[b] + k];
+    }
+
+    /**
+     * Returns the blocks reachable from the entry, each one after all its successors except along back edges.
+     * Backward dataflow problems converge fastest when visiting blocks in this order.
+     * The array is shared and must not be modified.
+     */
+    public int[] postorder() {
+        return postorder;
+    }
+
+    /**
+     * Returns the blocks reachable from the entry in reverse postorder, the best order for forward dataflow problems.
+     * The array is shared and must not be modified.
+     */
+    public int[] reversePostorder() {
+        return reversePostorder;
+    }
+
+    /**
+     * Returns the loop nesting depth of every block, i.e. the number of natural loops containing it.
+     *
+     * An edge is a back edge when it goes to a block which does not come after its source in reverse postorder; the
+     * code generator only produces reducible graphs, where these are exactly the edges to a dominator. The natural
+     * loop of a header is the header and every block reaching the source of one of its back edges without going
+     * through the header.
+     */
+    public int[] loopDepths() {
+        int[] rpoIndex = new int[numBlocks];
+        Arrays.fill(rpoIndex, -1);
+        for (int i = 0; i < reversePostorder.length; i++) {
+            rpoIndex[reversePostorder[i]] = i;
+        }
+
+        int[] depths = new int[numBlocks];
+        int[] inLoop = new int[numBlocks]; // marks the blocks of the loop of header h with h + 1
+        int[] worklist = new int[numBlocks];
+        for (int header = 0; header < numBlocks; header++) {
+            if (rpoIndex[header] < 0) {
+                continue;
+            }
+            int loop = header + 1;
+            int size = 0;
+            for (int p = predStart[header]; p < predStart[header + 1]; p++) {
+                int tail = pred[p];
+                if (rpoIndex[tail] >= rpoIndex[header]) {
+                    if (inLoop[header] != loop) {
+                        inLoop[header] = loop;
+                        depths[header]++;
+                    }
+                    if (inLoop[tail] != loop) {
+                        inLoop[tail] = loop;
+                        depths[tail]++;
+                        worklist[size++] = tail;
+                    }
+                }
+            }
+            while (size > 0) {
+                int n = worklist[--size];
+                for (int p = predStart[n]; p < predStart[n + 1]; p++) {
+                    int m = pred[p];
+                    if (inLoop[m] != loop && rpoIndex[m] >= 0) {
+                        inLoop[m] = loop;
+                        depths[m]++;
+                        worklist[size++] = m;
+                    }
+                }
+            }
+        }
+        return depths;
+    }
+}
@@ -0,0 +1,89 @@
+package regalloc;
+
+import java.util.Arrays;
+
+/**
+ * Operations on bit sets stored as {@code long[]}, bit n being bit (n % 64) of word (n / 64).
+ */
+final class Bits {
+
+    private Bits() { }
+
+    static long[] create(int size) {
+        return new long[(size + 63) >>> 6];
+    }
+
+    static boolean get(long[] set, int n) {
+        return (set[n >>> 6] & (1L << n)) != 0;
+    }
+
+    static void set(long[] set, int n) {
+        set[n >>> 6] |= 1L << n;
+    }
+
+    static void clear(long[] set, int n) {
+        set[n >>> 6] &= ~(1L << n);
+    }
+
+    static void clearAll(long[] set) {
+        Arrays.fill(set, 0L);
+    }
+
+    static void copy(long[] from, long[] to) {
+        System.arraycopy(from, 0, to, 0, to.length);
+    }
+
+    /**
+     * to |= from, returns true if to changed.
+     */
+    static boolean or(long[] to, long[] from) {
+        long changed = 0;
+        for (int i = 0; i < to.length; i++) {
+            long word = to[i] | from[i];
+            changed |= word ^ to[i];
+            to[i] = word;
+        }
+        return changed != 0;
+    }
+
+    /**
+     * to = use | (out & ~def), returns true if to changed.
+     */
+    static boolean transfer(long[] to, long[] use, long[] out, long[] def) {
+        long changed = 0;
+        for (int i = 0; i < to.length; i++) {
+            long word = use[i] | (out[i] & ~def[i]);
+            changed |= word ^ to[i];
+            to[i] = word;
+        }
+        return changed != 0;
+    }
+
+    /**
+     * Returns the index of the first set bit at or after from, or -1 if there is none.
+     */
+    static int next(long[] set, int from) {
+        int i = from >>> 6;
+        if (i >= set.length) {
+            return -1;
+        }
+        long word = set[i] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++i == set.length) {
+                return -1;
+            }
+            word = set[i];
+        }
+    }
+
+    static int count(long[] set) {
+        int count = 0;
+        for (long word : set) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
@@ -20,7 +20,7 @@ public final class CFGBuilder {
                 case Instruction instruction -> {
                     CFGNode currentNode = CFGNode.create(instruction);
                     cfg.addNode(currentNode);
-                    if (previousNode != null) {
+                    if (previousNode != null && previousNode.instruction.opcode != OpCode.J) {
                         cfg.addEdge(previousNode, currentNode);
                     }
 
@@ -39,7 +39,8 @@ public final class CFGBuilder {
             }
         }
 
-        for (CFGNode currentNode : cfg.nodes) {
+        for (int i = 0; i < cfg.nodes.size(); ++i) {
+            CFGNode currentNode = cfg.nodes.get(i);
             switch (currentNode.instruction) {
                 case Instruction.BinaryBranch binaryBranch -> {
                     CFGNode nextNode = labelMap.get(binaryBranch.label.toString());
@@ -55,6 +56,16 @@ public final class CFGBuilder {
                     }
                 }
 
+                // a jump does not fall through, unless its target is outside of the section
+                case Instruction.Jump jump when jump.opcode == OpCode.J -> {
+                    CFGNode nextNode = labelMap.get(jump.label.toString());
+                    if (nextNode != null) {
+                        cfg.addEdge(currentNode, nextNode);
+                    } else if (i + 1 < cfg.nodes.size()) {
+                        cfg.addEdge(currentNode, cfg.nodes.get(i + 1));
+                    }
+                }
+
                 default -> {}
             }
         }
@@ -0,0 +1,62 @@
+package regalloc;
+
+import gen.asm.*;
+
+import java.util.*;
+
+/**
+ * What a call may do to the registers, as seen by the register allocator.
+ *
+ * The $s registers are callee-saved: a function writing one of them saves it on entry and restores it before
+ * returning. Every other register is caller-saved, so a value living in one across a call must be saved by the caller.
+ * A function without virtual registers nor calls, such as a small leaf function, is known to write only the registers
+ * appearing in its code, and calling it leaves every other register untouched.
+ */
+final class CallingConvention {
+
+    // registers written by the functions known not to write any allocated register, by label
+    private final Map<String, Set<Register.Arch>> writtenRegisters = new HashMap<>();
+
+    CallingConvention(AssemblyProgram prog) {
+        for (AssemblyProgram.TextSection section : prog.textSections) {
+            Label label = null;
+            Set<Register.Arch> written = new HashSet<>();
+            boolean known = true;
+            for (AssemblyItem item : section.items) {
+                if (item instanceof Label l && label == null) {
+                    label = l;
+                } else if (item instanceof Instruction insn) {
+                    known &= !isCall(insn) && insn.registers().stream().noneMatch(Register::isVirtual);
+                    if (insn.def() instanceof Register.Arch ar) {
+                        written.add(ar);
+                    }
+                }
+            }
+            if (label != null && known) {
+                writtenRegisters.put(label.toString(), written);
+            }
+        }
+    }
+
+    static boolean isCall(Instruction insn) {
+        return insn.opcode == OpCode.JAL || insn.opcode == OpCode.JALR;
+    }
+
+    static boolean isCalleeSaved(Register.Arch ar) {
+        return ar == Register.Arch.s0 || ar == Register.Arch.s1 || ar == Register.Arch.s2 || ar == Register.Arch.s3
+                || ar == Register.Arch.s4 || ar == Register.Arch.s5 || ar == Register.Arch.s6 || ar == Register.Arch.s7;
+    }
+
+    /**
+     * Returns whether the value of a register may be lost across a call.
+     */
+    boolean clobbers(Instruction call, Register.Arch ar) {
+        if (isCalleeSaved(ar)) {
+            return false;
+        }
+        Set<Register.Arch> written = call instanceof Instruction.Jump jump
+                ? writtenRegisters.get(jump.label.toString())
+                : null;
+        return written == null || written.contains(ar);
+    }
+}
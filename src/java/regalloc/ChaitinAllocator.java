@@ -4,31 +4,87 @@ import gen.asm.Register;
 
 import java.util.*;
 
-public class ChaitinAllocator {
-
-    private final InterferenceGraph graph;
+/**
+ * Chaitin graph colouring over an {@link InterferenceMatrix}.
+ *
+ * Nodes are considered in the order of the names of their registers. Simplify always removes the first node whose
+ * degree is lower than the number of registers; nodes of higher degree wait in one bucket per degree, so removing a
+ * node only moves each of its neighbours between buckets.
+ *
+ * When every node left has a high degree, the one picked by the spilling heuristic is removed as a potential spill:
+ * it is only spilled if its neighbours take every register once coloured (Briggs).
+ */
+public class ChaitinAllocator implements SpillingHeuristic.Candidates {
+
+    private final InterferenceMatrix graph;
     private final int availableRegisters;
-    private final Deque<IGNode> stack;
-    private final Map<IGNode, Integer> degreeMap;
-    private final List<IGNode> worklist;
     private final SpillingHeuristic heuristic;
 
+    private final int[] order; // nodes sorted by register name
+    private final int[] rank; // position of each node in order
+
+    private final int[] degrees;
+    private final long[] remaining; // ranks of the nodes left
+    private final long[] lowDegree; // ranks of the nodes left with degree < availableRegisters
+    private int lowCursor; // no node of lower rank has a low degree
+
+    // nodes left with a high degree, in doubly linked lists per degree
+    private final int[] bucketHeads;
+    private final int[] bucketNext;
+    private final int[] bucketPrev;
+    private int maxDegree;
+
+    private final int[] stack;
+    private int stackSize = 0;
+
     private final Set<Register.Virtual> spilledRegisters;
     private final Map<Register.Virtual, Integer> coloring;
 
-    public ChaitinAllocator(InterferenceGraph graph, int availableRegisters, SpillingHeuristic heuristic) {
+    public ChaitinAllocator(InterferenceMatrix graph, int availableRegisters, SpillingHeuristic heuristic) {
         this.graph = graph;
         this.availableRegisters = availableRegisters;
         this.heuristic = heuristic;
-        stack = new ArrayDeque<>();
-        degreeMap = new HashMap<>();
         coloring = new HashMap<>();
         spilledRegisters = new HashSet<>();
-        graph.nodes().forEach(node -> {
-            int initialNeighborCount = node.neighbors.size();
-            degreeMap.put(node, initialNeighborCount);
-        });
-        worklist = new ArrayList<>(graph.nodes());
+
+        int n = graph.size();
+        order = new int[n];
+        Integer[] sorted = new Integer[n];
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = i;
+            names[i] = graph.register(i).toString();
+        }
+        Arrays.sort(sorted, Comparator.comparing(i -> names[i]));
+        rank = new int[n];
+        for (int r = 0; r < n; r++) {
+            order[r] = sorted[r];
+            rank[sorted[r]] = r;
+        }
+
+        degrees = new int[n];
+        remaining = Bits.create(n);
+        lowDegree = Bits.create(n);
+        bucketNext = new int[n];
+        bucketPrev = new int[n];
+        maxDegree = availableRegisters - 1;
+        for (int i = 0; i < n; i++) {
+            degrees[i] = graph.degree(i);
+            maxDegree = Math.max(maxDegree, degrees[i]);
+        }
+        bucketHeads = new int[maxDegree + 1];
+        Arrays.fill(bucketHeads, -1);
+        for (int i = 0; i < n; i++) {
+            Bits.set(remaining, rank[i]);
+            if (degrees[i] < availableRegisters) {
+                Bits.set(lowDegree, rank[i]);
+            } else {
+                link(i);
+            }
+        }
+        lowCursor = 0;
+
+        stack = new int[n];
     }
 
     public Map<Register.Virtual, Integer> getColoring() {
@@ -45,73 +101,141 @@ public class ChaitinAllocator {
     }
 
     private void populateStack() {
-        if (worklist.isEmpty()) {
-            return;
+        while (stackSize < graph.size()) {
+            int r = Bits.next(lowDegree, lowCursor);
+            int node;
+            if (r >= 0) {
+                lowCursor = r;
+                node = order[r];
+            } else {
+                node = heuristic.pickNodeToSpill(this);
+            }
+            remove(node);
+            stack[stackSize++] = node;
         }
+    }
 
-        IGNode removedNode = null;
+    private void remove(int node) {
+        Bits.clear(remaining, rank[node]);
+        if (degrees[node] < availableRegisters) {
+            Bits.clear(lowDegree, rank[node]);
+        } else {
+            unlink(node);
+        }
 
-        for (IGNode node : worklist) {
-            int degree = degreeMap.get(node);
-            if (degree < availableRegisters) {
-                updateNeighborDegrees(node);
-                stack.push(node);
-                degreeMap.remove(node);
-                removedNode = node;
-                break;
+        for (int k = 0; k < graph.degree(node); k++) {
+            int neighbor = graph.neighbor(node, k);
+            if (!Bits.get(remaining, rank[neighbor])) {
+                continue;
+            }
+            if (degrees[neighbor] < availableRegisters) {
+                degrees[neighbor]--;
+            } else {
+                unlink(neighbor);
+                degrees[neighbor]--;
+                if (degrees[neighbor] < availableRegisters) {
+                    Bits.set(lowDegree, rank[neighbor]);
+                    lowCursor = Math.min(lowCursor, rank[neighbor]);
+                } else {
+                    link(neighbor);
+                }
             }
         }
+    }
 
-        if (removedNode != null) {
-            worklist.remove(removedNode);
-            populateStack();
-        } else {
-            spillRegister();
+    private void link(int node) {
+        int head = bucketHeads[degrees[node]];
+        bucketNext[node] = head;
+        bucketPrev[node] = -1;
+        if (head >= 0) {
+            bucketPrev[head] = node;
         }
-
+        bucketHeads[degrees[node]] = node;
     }
 
-    private void spillRegister() {
-        IGNode nodeToSpill = heuristic.pickNodeToSpill(worklist, degreeMap);
-        spilledRegisters.add(nodeToSpill.virtualReg);
-        updateNeighborDegrees(nodeToSpill);
-        stack.push(nodeToSpill);
-        degreeMap.remove(nodeToSpill);
-        worklist.remove(nodeToSpill);
-        populateStack();
+    private void unlink(int node) {
+        if (bucketPrev[node] >= 0) {
+            bucketNext[bucketPrev[node]] = bucketNext[node];
+        } else {
+            bucketHeads[degrees[node]] = bucketNext[node];
+        }
+        if (bucketNext[node] >= 0) {
+            bucketPrev[bucketNext[node]] = bucketPrev[node];
+        }
     }
 
     private void assignColors() {
-        while (!stack.isEmpty()) {
-            IGNode node = stack.pop();
-
-            if (spilledRegisters.contains(node.virtualReg)) {
-                continue;
-            }
-
-            Set<Integer> usedColors = new HashSet<>();
-            for (IGNode neighbor : node.neighbors) {
-                Integer color = coloring.get(neighbor.virtualReg);
+        boolean[] usedColors = new boolean[availableRegisters];
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            Register.Virtual vr = graph.register(node);
+
+            Arrays.fill(usedColors, false);
+            for (int k = 0; k < graph.degree(node); k++) {
+                Integer color = coloring.get(graph.register(graph.neighbor(node, k)));
                 if (color != null) {
-                    usedColors.add(color);
+                    usedColors[color] = true;
                 }
             }
 
-            for (int color = 0; color < availableRegisters; ++color) {
-                if (!usedColors.contains(color)) {
-                    coloring.put(node.virtualReg, color);
-                    break;
-                }
+            int color = 0;
+            while (color < availableRegisters && usedColors[color]) {
+                color++;
+            }
+            if (color < availableRegisters) {
+                coloring.put(vr, color);
+            } else {
+                spilledRegisters.add(vr);
             }
         }
     }
 
-    private void updateNeighborDegrees(IGNode node) {
-        node.neighbors.forEach(neighbor -> {
-            degreeMap.computeIfPresent(neighbor, (n, d) -> d - 1);
-        });
+    @Override
+    public InterferenceMatrix graph() {
+        return graph;
     }
 
+    @Override
+    public int first() {
+        int r = Bits.next(remaining, 0);
+        return r >= 0 ? order[r] : -1;
+    }
 
+    @Override
+    public int next(int node) {
+        int r = Bits.next(remaining, rank[node] + 1);
+        return r >= 0 ? order[r] : -1;
+    }
 
+    @Override
+    public int degree(int node) {
+        return degrees[node];
+    }
+
+    @Override
+    public int maxDegree() {
+        while (maxDegree >= availableRegisters && bucketHeads[maxDegree] < 0) {
+            maxDegree--;
+        }
+        return maxDegree;
+    }
+
+    @Override
+    public int firstWithDegree(int degree) {
+        if (degree < availableRegisters) {
+            for (int node = first(); node >= 0; node = next(node)) {
+                if (degrees[node] == degree) {
+                    return node;
+                }
+            }
+            return -1;
+        }
+        int first = -1;
+        for (int node = bucketHeads[degree]; node >= 0; node = bucketNext[node]) {
+            if (first < 0 || rank[node] < rank[first]) {
+                first = node;
+            }
+        }
+        return first;
+    }
 }
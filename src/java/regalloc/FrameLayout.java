@@ -0,0 +1,56 @@
+package regalloc;
+
+import gen.asm.AssemblyProgram;
+import gen.asm.Register;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The frame a function has set up by the time it reaches pushRegisters: $sp lies spOffset bytes from base, a register
+ * that does not move in the body of the function. The code generator records the layout of each text section it
+ * produces, and the register allocators reserve their stack slots from it.
+ *
+ * A section with no recorded layout, such as one written by hand, gets its slots in the data section instead.
+ */
+public record FrameLayout(Register.Arch base, int spOffset) {
+
+    // sections are equal when their items are, so they are told apart by identity
+    private static final Map<AssemblyProgram.TextSection, FrameLayout> layouts = new IdentityHashMap<>();
+
+    /**
+     * A function setting up $fp, with spOffset bytes of saved registers and local variables below it.
+     */
+    public static FrameLayout framePointer(int spOffset) {
+        return new FrameLayout(Register.Arch.fp, spOffset);
+    }
+
+    /**
+     * A function making no call, which leaves $sp where its caller had it.
+     */
+    public static FrameLayout frameless() {
+        return new FrameLayout(Register.Arch.sp, 0);
+    }
+
+    public static void record(AssemblyProgram.TextSection section, FrameLayout layout) {
+        layouts.put(section, layout);
+    }
+
+    /**
+     * Forgets the layouts recorded so far, before a new program is generated.
+     */
+    public static void clear() {
+        layouts.clear();
+    }
+
+    /**
+     * Returns the layout recorded for section, or null if there is none.
+     */
+    static FrameLayout of(AssemblyProgram.TextSection section) {
+        return layouts.get(section);
+    }
+
+    boolean hasFramePointer() {
+        return base == Register.Arch.fp;
+    }
+}
@@ -3,6 +3,7 @@ package regalloc;
 import gen.asm.*;
 
 import java.util.*;
+import java.util.function.Function;
 
 import static gen.asm.Register.Arch.*;
 
@@ -18,74 +19,69 @@ public class GraphColouringRegAlloc implements AssemblyPass {
 
     private static final int NUM_PHYSICAL_REGS = PHYSICAL_REGS.length;
 
-    private GraphColouringRegAlloc() { }
+    // functions with more instructions than this are allocated by linear scan
+    private static final int LINEAR_SCAN_THRESHOLD = 5000;
 
-    private void emitPushRegisters(AssemblyProgram.TextSection section,
-                                   List<Register.Virtual> allocatedOrder,
-                                   Map<Register.Virtual, Register.Arch> vrToAr,
-                                   List<Register.Virtual> spilledOrder,
-                                   Map<Register.Virtual, Label> spillLabels) {
-        section.emit("Original instruction: pushRegisters");
+    private final boolean coalescing;
+    private final int linearScanThreshold;
+    private final Function<Liveness, SpillingHeuristic> spillingHeuristic;
 
-        Set<Register.Arch> alreadyPushed = new HashSet<>();
+    private GraphColouringRegAlloc(boolean coalescing, int linearScanThreshold,
+                                   Function<Liveness, SpillingHeuristic> spillingHeuristic) {
+        this.coalescing = coalescing;
+        this.linearScanThreshold = linearScanThreshold;
+        this.spillingHeuristic = spillingHeuristic;
+    }
 
-        for (Register.Virtual vr : allocatedOrder) {
-            Register.Arch archReg = vrToAr.get(vr);
-            if (alreadyPushed.add(archReg)) {
-                section.emit(OpCode.ADDIU, Register.Arch.sp, Register.Arch.sp, -4);
-                section.emit(OpCode.SW, archReg, Register.Arch.sp, 0);
-            }
-        }
+    /**
+     * Returns the same allocator choosing the registers to spill with the heuristic made for each function.
+     */
+    public GraphColouringRegAlloc withSpillingHeuristic(Function<Liveness, SpillingHeuristic> spillingHeuristic) {
+        return new GraphColouringRegAlloc(coalescing, linearScanThreshold, spillingHeuristic);
+    }
+
+    private void emitPushRegisters(AssemblyProgram.TextSection section,
+                                   List<Register.Arch> calleeSaved,
+                                   SpillSlots spillSlots) {
+        section.emit("Original instruction: pushRegisters");
 
-        for (Register.Virtual vr : spilledOrder) {
-            Label label = spillLabels.get(vr);
-            section.emit(OpCode.LA, SPILL_REG0, label);
-            section.emit(OpCode.LW, SPILL_REG0, SPILL_REG0, 0);
-            section.emit(OpCode.ADDIU, Register.Arch.sp, Register.Arch.sp, -4);
-            section.emit(OpCode.SW, SPILL_REG0, Register.Arch.sp, 0);
+        // a single adjustment of $sp reserves the spill slots and the slots of the saved registers
+        spillSlots.emitReserve(section);
+        for (Register.Arch ar : calleeSaved) {
+            spillSlots.emitStore(section, ar, ar);
         }
     }
 
 
     private void emitPopRegisters(AssemblyProgram.TextSection section,
-                                  List<Register.Virtual> allocatedOrder,
-                                  Map<Register.Virtual, Register.Arch> vrToAr,
-                                  List<Register.Virtual> spilledOrder,
-                                  Map<Register.Virtual, Label> spillLabels) {
+                                  List<Register.Arch> calleeSaved,
+                                  SpillSlots spillSlots) {
         section.emit("Original instruction: popRegisters");
 
-        List<Register.Virtual> reversedSpilled = new ArrayList<>(spilledOrder);
-        Collections.reverse(reversedSpilled);
-
-        for (Register.Virtual vr : reversedSpilled) {
-            Label label = spillLabels.get(vr);
-            section.emit(OpCode.LW, SPILL_REG0, Register.Arch.sp, 0);
-            section.emit(OpCode.ADDIU, Register.Arch.sp, Register.Arch.sp, 4);
-            section.emit(OpCode.LA, SPILL_REG1, label);
-            section.emit(OpCode.SW, SPILL_REG0, SPILL_REG1, 0);
-        }
-
-        // Pop physical registers in reverse push order
-        Set<Register.Arch> seen = new HashSet<>();
-        List<Register.Arch> physicalOrder = new ArrayList<>();
-        for (Register.Virtual vr : allocatedOrder) {
-            Register.Arch ar = vrToAr.get(vr);
-            if (seen.add(ar)) {
-                physicalOrder.add(ar);
-            }
+        for (Register.Arch ar : calleeSaved) {
+            spillSlots.emitLoad(section, ar, ar);
         }
+        spillSlots.emitRelease(section);
+    }
 
-        Collections.reverse(physicalOrder);
+    private void emitCall(Instruction call,
+                          List<Register.Arch> callerSaved,
+                          SpillSlots spillSlots,
+                          AssemblyProgram.TextSection section) {
+        section.emit("Original instruction: " + call);
 
-        for (Register.Arch ar : physicalOrder) {
-            section.emit(OpCode.LW, ar, Register.Arch.sp, 0);
-            section.emit(OpCode.ADDIU, Register.Arch.sp, Register.Arch.sp, 4);
+        for (Register.Arch ar : callerSaved) {
+            spillSlots.emitStore(section, ar, ar);
+        }
+        section.emit(call);
+        for (Register.Arch ar : callerSaved) {
+            spillSlots.emitLoad(section, ar, ar);
         }
     }
 
     private void emitInstructionWithoutVirtualRegister(Instruction insn,
                                                        Map<Register.Virtual, Register.Arch> vrToAr,
-                                                       Map<Register.Virtual, Label> spillLabels,
+                                                       SpillSlots spillSlots,
                                                        AssemblyProgram.TextSection section) {
 
         section.emit("Original instruction: "+insn);
@@ -99,18 +95,17 @@ public class GraphColouringRegAlloc implements AssemblyPass {
             if (reg instanceof Register.Virtual vr) {
                 if (vrToAr.containsKey(vr)) {
                     mapping.put(vr, vrToAr.get(vr));
-                } else if (spillLabels.containsKey(vr)) {
+                } else if (spillSlots.contains(vr) && !mapping.containsKey(vr)) {
                     Register.Arch temp = spillRegs.pop();
                     mapping.put(vr, temp);
-                    Label label = spillLabels.get(vr);
-                    section.emit(OpCode.LA, temp, label);
-                    section.emit(OpCode.LW, temp, temp, 0);
+                    spillSlots.emitLoad(section, temp, vr);
                 }
             }
         });
 
         Register def = insn.def();
-        Register defSpillTemp = SPILL_REG0;
+        // a spilled register also used by the instruction is defined in the temporary it was loaded into
+        Register defSpillTemp = mapping.getOrDefault(def, SPILL_REG0);
         if (def instanceof Register.Virtual vr) {
             if (vrToAr.containsKey(vr)) {
                 mapping.put(vr, vrToAr.get(vr));
@@ -121,10 +116,8 @@ public class GraphColouringRegAlloc implements AssemblyPass {
 
         section.emit(insn.rebuild(mapping));
 
-        if (def instanceof Register.Virtual vr && spillLabels.containsKey(vr)) {
-            Label label = spillLabels.get(def);
-            section.emit(OpCode.LA, SPILL_REG1, label);
-            section.emit(OpCode.SW, defSpillTemp, SPILL_REG1, 0);
+        if (def instanceof Register.Virtual vr && spillSlots.contains(vr)) {
+            spillSlots.emitStore(section, defSpillTemp, vr);
         }
     }
 
@@ -133,66 +126,226 @@ public class GraphColouringRegAlloc implements AssemblyPass {
 
         prog.dataSection.items.forEach(newProg.dataSection::emit);
 
-        CFGBuilder cfgBuilder = new CFGBuilder();
-
         IGBuilder igBuilder = new IGBuilder();
+        CallingConvention convention = new CallingConvention(prog);
 
         prog.textSections.forEach(section -> {
-            ControlFlowGraph cfg = cfgBuilder.visit(section);
-            LivenessAnalyser livenessAnalyser = new LivenessAnalyser(cfg);
-            livenessAnalyser.visit();
-            InterferenceGraph ig = igBuilder.visit(cfg);
-            ChaitinAllocator allocator = new ChaitinAllocator(ig, NUM_PHYSICAL_REGS, SpillingHeuristic.MOST_CONNECTED);
-            allocator.allocate();
-
-            Map<Virtual, Integer> colorMap = allocator.getColoring();
-            Set<Virtual> spilledRegs = allocator.getSpilledRegisters();
+            Liveness liveness = new Liveness(section);
+            Map<Virtual, Integer> colorMap;
+            Set<Virtual> spilledRegs;
+            Map<Virtual, Virtual> coalescedRegs;
+            if (liveness.instructionCount() > linearScanThreshold) {
+                LinearScanAllocator allocator = new LinearScanAllocator(liveness, NUM_PHYSICAL_REGS);
+                allocator.allocate();
+                colorMap = allocator.getColoring();
+                spilledRegs = allocator.getSpilledRegisters();
+                coalescedRegs = Map.of();
+            } else if (coalescing) {
+                IteratedCoalescingAllocator allocator = allocateCoalescing(liveness, igBuilder);
+                colorMap = allocator.getColoring();
+                spilledRegs = allocator.getSpilledRegisters();
+                coalescedRegs = allocator.getCoalescedRegisters();
+            } else {
+                InterferenceMatrix ig = igBuilder.build(liveness);
+                ChaitinAllocator allocator = new ChaitinAllocator(ig, NUM_PHYSICAL_REGS,
+                        spillingHeuristic.apply(liveness));
+                allocator.allocate();
+                colorMap = allocator.getColoring();
+                spilledRegs = allocator.getSpilledRegisters();
+                coalescedRegs = Map.of();
+            }
 
+            Register.Arch[] registers = assignRegisters(liveness, colorMap, convention);
             Map<Virtual, Arch> vrToAr = new HashMap<>();
-            colorMap.forEach((vr, color) -> vrToAr.put(vr, PHYSICAL_REGS[color]));
-
-            Map<Virtual, Label> spillLabels = new HashMap<>();
-            if (!spilledRegs.isEmpty()) {
-                newProg.dataSection.emit("Allocated labels for spilled registers");
-                spilledRegs.forEach(sr -> {
-                    Label l = Label.create(sr.toString());
-                    spillLabels.put(sr, l);
-                    newProg.dataSection.emit(l);
-                    newProg.dataSection.emit(new Directive("space", 4));
-                });
+            colorMap.forEach((vr, color) -> vrToAr.put(vr, registers[color]));
+
+            // slots in the data section are addressed through the spill temporaries not holding the value stored
+            SpillSlots spillSlots = new SpillSlots(section, newProg.dataSection, SPILL_REG0, SPILL_REG1);
+            spilledRegs.forEach(spillSlots::allocate);
+            // registers coalesced into a spilled one live in its slot
+            coalescedRegs.forEach((vr, into) -> {
+                if (spillSlots.contains(into)) {
+                    spillSlots.share(vr, into);
+                }
+            });
+
+            // the callee-saved registers written by the function are saved on entry, and the caller-saved ones
+            // around the calls they are live across
+            Set<Register.Arch> written = new HashSet<>();
+            List<List<Register.Arch>> callerSaved = new ArrayList<>();
+            for (int i = 0; i < liveness.instructionCount(); i++) {
+                if (liveness.def(i) >= 0 && vrToAr.containsKey(liveness.register(liveness.def(i)))) {
+                    written.add(vrToAr.get(liveness.register(liveness.def(i))));
+                }
+                callerSaved.add(callerSavedAcross(liveness, i, vrToAr, convention));
+            }
+            List<Register.Arch> calleeSaved = new ArrayList<>();
+            for (Register.Arch ar : PHYSICAL_REGS) {
+                if (CallingConvention.isCalleeSaved(ar) && written.contains(ar)) {
+                    calleeSaved.add(ar);
+                    spillSlots.allocate(ar);
+                } else if (callerSaved.stream().anyMatch(saved -> saved.contains(ar))) {
+                    spillSlots.allocate(ar);
+                }
             }
 
             AssemblyProgram.TextSection newSection = newProg.emitNewTextSection();
-            List<Register.Virtual> allocatedInOrder = new ArrayList<>(vrToAr.keySet());
-            List<Register.Virtual> spilledInOrder = new ArrayList<>(spillLabels.keySet());
 
-            section.items.forEach(item -> {
+            int i = 0;
+            for (AssemblyItem item : section.items) {
                 switch (item) {
                     case AssemblyTextItem ati -> newSection.emit(ati);
                     case Instruction insn -> {
-                        /*
-                        if (livenessAnalyser.deadInstructions.contains(insn)) {
-                            livenessAnalyser.deadInstructions.remove(insn);
-                            break;
-                        }
-
-                         */
                         if (insn == Instruction.Nullary.pushRegisters) {
-                            emitPushRegisters(newSection, allocatedInOrder, vrToAr, spilledInOrder, spillLabels);
+                            emitPushRegisters(newSection, calleeSaved, spillSlots);
                         } else if (insn == Instruction.Nullary.popRegisters) {
-                            emitPopRegisters(newSection, allocatedInOrder, vrToAr, spilledInOrder, spillLabels);
+                            emitPopRegisters(newSection, calleeSaved, spillSlots);
+                        } else if (coalescing && isCoalescedMove(insn, coalescedRegs)) {
+                            newSection.emit("Coalesced move: " + insn);
+                        } else if (!callerSaved.get(i).isEmpty()) {
+                            emitCall(insn, callerSaved.get(i), spillSlots, newSection);
                         } else
-                            emitInstructionWithoutVirtualRegister(insn, vrToAr, spillLabels, newSection);
+                            emitInstructionWithoutVirtualRegister(insn, vrToAr, spillSlots, newSection);
+                        i++;
                     }
                 }
-            });
+            }
 
         });
 
         return newProg;
     }
 
-    public static final GraphColouringRegAlloc INSTANCE = new GraphColouringRegAlloc();
+    /**
+     * Returns the caller-saved registers holding a value live across the i^th instruction, if it is a call which may
+     * overwrite them.
+     */
+    private static List<Register.Arch> callerSavedAcross(Liveness liveness, int i, Map<Virtual, Arch> vrToAr,
+                                                         CallingConvention convention) {
+        Instruction insn = liveness.instruction(i);
+        if (!CallingConvention.isCall(insn)) {
+            return List.of();
+        }
+        Set<Register.Arch> live = new HashSet<>();
+        long[] liveOut = liveness.liveOut(i);
+        for (int n = Bits.next(liveOut, 0); n >= 0; n = Bits.next(liveOut, n + 1)) {
+            Register.Arch ar = vrToAr.get(liveness.register(n));
+            if (ar != null && convention.clobbers(insn, ar)) {
+                live.add(ar);
+            }
+        }
+        List<Register.Arch> saved = new ArrayList<>();
+        for (Register.Arch ar : PHYSICAL_REGS) {
+            if (live.contains(ar)) {
+                saved.add(ar);
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Maps the colours to registers. A colour live across calls costs a store and a load around each of them in a
+     * caller-saved register, but only one of each per call of the function in a callee-saved one, so the colours
+     * living the most across calls, weighted by loop depth like spill costs, get the callee-saved registers.
+     */
+    private static Register.Arch[] assignRegisters(Liveness liveness, Map<Virtual, Integer> colorMap,
+                                                   CallingConvention convention) {
+        boolean[] used = new boolean[NUM_PHYSICAL_REGS];
+        colorMap.values().forEach(color -> used[color] = true);
+
+        int[] depths = liveness.cfg().loopDepths();
+        double[] callCosts = new double[NUM_PHYSICAL_REGS];
+        boolean[] live = new boolean[NUM_PHYSICAL_REGS];
+        for (int i = 0; i < liveness.instructionCount(); i++) {
+            Instruction insn = liveness.instruction(i);
+            if (!CallingConvention.isCall(insn)
+                    || Arrays.stream(PHYSICAL_REGS).noneMatch(ar -> convention.clobbers(insn, ar))) {
+                continue;
+            }
+            Arrays.fill(live, false);
+            long[] liveOut = liveness.liveOut(i);
+            for (int n = Bits.next(liveOut, 0); n >= 0; n = Bits.next(liveOut, n + 1)) {
+                Integer color = colorMap.get(liveness.register(n));
+                if (color != null) {
+                    live[color] = true;
+                }
+            }
+            double cost = 2 * Math.pow(10, depths[liveness.cfg().blockOf(i)]);
+            for (int color = 0; color < NUM_PHYSICAL_REGS; color++) {
+                if (live[color]) {
+                    callCosts[color] += cost;
+                }
+            }
+        }
+
+        Deque<Register.Arch> callerSavedRegs = new ArrayDeque<>();
+        Deque<Register.Arch> calleeSavedRegs = new ArrayDeque<>();
+        for (Register.Arch ar : PHYSICAL_REGS) {
+            (CallingConvention.isCalleeSaved(ar) ? calleeSavedRegs : callerSavedRegs).add(ar);
+        }
+
+        Register.Arch[] registers = new Register.Arch[NUM_PHYSICAL_REGS];
+        Integer[] byCost = new Integer[NUM_PHYSICAL_REGS];
+        for (int color = 0; color < NUM_PHYSICAL_REGS; color++) {
+            byCost[color] = color;
+        }
+        Arrays.sort(byCost, Comparator.comparingDouble(color -> -callCosts[color]));
+        for (int color : byCost) {
+            if (used[color] && callCosts[color] > 2 && !calleeSavedRegs.isEmpty()) {
+                registers[color] = calleeSavedRegs.poll();
+            }
+        }
+        for (int color = 0; color < NUM_PHYSICAL_REGS; color++) {
+            if (used[color] && registers[color] == null) {
+                registers[color] = callerSavedRegs.isEmpty() ? calleeSavedRegs.poll() : callerSavedRegs.poll();
+            }
+        }
+        return registers;
+    }
+
+    private IteratedCoalescingAllocator allocateCoalescing(Liveness liveness, IGBuilder igBuilder) {
+        InterferenceMatrix ig = igBuilder.build(liveness, true);
+        int[] moveDsts = new int[liveness.instructionCount()];
+        int[] moveSrcs = new int[liveness.instructionCount()];
+        int numMoves = 0;
+        for (int i = 0; i < liveness.instructionCount(); i++) {
+            if (IGBuilder.isMove(liveness.instruction(i))) {
+                moveDsts[numMoves] = liveness.def(i);
+                moveSrcs[numMoves] = liveness.uses(i)[0];
+                numMoves++;
+            }
+        }
+
+        IteratedCoalescingAllocator allocator = new IteratedCoalescingAllocator(ig,
+                Arrays.copyOf(moveDsts, numMoves), Arrays.copyOf(moveSrcs, numMoves),
+                NUM_PHYSICAL_REGS, spillingHeuristic.apply(liveness));
+        allocator.allocate();
+        return allocator;
+    }
+
+    private static boolean isCoalescedMove(Instruction insn, Map<Virtual, Virtual> coalescedRegs) {
+        if (!IGBuilder.isMove(insn)) {
+            return false;
+        }
+        Register dst = insn.def();
+        Register src = insn.uses().stream().filter(r -> r instanceof Virtual).findFirst().orElseThrow();
+        return coalescedRegs.getOrDefault(dst, (Virtual) dst).equals(coalescedRegs.getOrDefault(src, (Virtual) src));
+    }
+
+    public static final GraphColouringRegAlloc INSTANCE = new GraphColouringRegAlloc(false, LINEAR_SCAN_THRESHOLD,
+            SpillingHeuristic::costPerDegree);
+
+    /**
+     * Iterated register coalescing, dropping the moves whose source and destination have been merged.
+     */
+    public static final GraphColouringRegAlloc COALESCING = new GraphColouringRegAlloc(true, LINEAR_SCAN_THRESHOLD,
+            SpillingHeuristic::costPerDegree);
+
+    /**
+     * Linear scan for every function, whatever its size.
+     */
+    public static final GraphColouringRegAlloc LINEAR_SCAN = new GraphColouringRegAlloc(false, 0,
+            SpillingHeuristic::costPerDegree);
 
     @Override
     public AssemblyProgram apply(AssemblyProgram prog) {
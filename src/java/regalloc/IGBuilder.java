@@ -1,5 +1,7 @@
 package regalloc;
 
+import gen.asm.Instruction;
+import gen.asm.OpCode;
 import gen.asm.Register;
 
 import java.util.List;
@@ -18,6 +20,59 @@ public final class IGBuilder {
         return ig;
     }
 
+    /**
+     * Builds the interference graph the Appel way: the register defined by an instruction interferes with every
+     * register live out of it. Registers that are live together are always in such a pair, since every register is
+     * defined before being used, so this is the graph of the cliques over every live set in linear time in their size.
+     */
+    public InterferenceMatrix build(Liveness liveness) {
+        return build(liveness, false);
+    }
+
+    /**
+     * If moves are to be coalesced, the destination of a move does not interfere with its source because of the move
+     * itself, so that both can share a register.
+     */
+    public InterferenceMatrix build(Liveness liveness, boolean coalescing) {
+        Register.Virtual[] registers = new Register.Virtual[liveness.registerCount()];
+        for (int n = 0; n < registers.length; n++) {
+            registers[n] = liveness.register(n);
+        }
+        InterferenceMatrix matrix = new InterferenceMatrix(registers);
+
+        liveness.forEachInstruction((i, liveIn, liveOut) -> {
+            int def = liveness.def(i);
+            if (def >= 0) {
+                int source = coalescing && isMove(liveness.instruction(i)) ? liveness.uses(i)[0] : -1;
+                for (int n = Bits.next(liveOut, 0); n >= 0; n = Bits.next(liveOut, n + 1)) {
+                    if (n != source) {
+                        matrix.addEdge(def, n);
+                    }
+                }
+            }
+        });
+
+        return matrix;
+    }
+
+    /**
+     * Returns true for a copy from a virtual register to another one, as emitted for assignments: addi d, s, 0 or
+     * add d, s, $zero.
+     */
+    static boolean isMove(Instruction insn) {
+        return switch (insn) {
+            case Instruction.ArithmeticWithImmediate i ->
+                    (i.opcode == OpCode.ADDI || i.opcode == OpCode.ADDIU) && i.imm == 0
+                            && i.dst instanceof Register.Virtual && i.src instanceof Register.Virtual;
+            case Instruction.TernaryArithmetic t ->
+                    (t.opcode == OpCode.ADD || t.opcode == OpCode.ADDU || t.opcode == OpCode.OR)
+                            && t.dst instanceof Register.Virtual
+                            && (t.src1 instanceof Register.Virtual && t.src2 == Register.Arch.zero
+                                || t.src1 == Register.Arch.zero && t.src2 instanceof Register.Virtual);
+            default -> false;
+        };
+    }
+
     private void addEdgesFromLiveSet(InterferenceGraph ig, Set<Register> liveSet) {
         List<Register.Virtual> virtualRegs = liveSet.stream()
                 .filter(r -> r instanceof Register.Virtual)
@@ -0,0 +1,92 @@
+package regalloc;
+
+import gen.asm.Register;
+
+import java.util.Arrays;
+
+/**
+ * Interference graph over densely numbered virtual registers (see {@link Liveness#register(int)}).
+ *
+ * Edges are kept twice: in a lower triangular bit matrix, to test interference in constant time, and in an int
+ * adjacency array per node, to iterate over neighbours without allocating.
+ */
+public final class InterferenceMatrix {
+
+    private static final int INITIAL_ADJACENCY = 4;
+
+    private final Register.Virtual[] registers;
+    private final long[] matrix; // bit i * (i - 1) / 2 + j for i > j
+    private final int[][] adjacency;
+    private final int[] degrees;
+    private int edgeCount = 0;
+
+    public InterferenceMatrix(Register.Virtual[] registers) {
+        this.registers = registers;
+        int n = registers.length;
+        matrix = new long[(int) (((long) n * (n - 1) / 2 + 63) >>> 6)];
+        adjacency = new int[n][];
+        degrees = new int[n];
+    }
+
+    public int size() {
+        return registers.length;
+    }
+
+    public Register.Virtual register(int n) {
+        return registers[n];
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    private static long index(int a, int b) {
+        long i = Math.max(a, b);
+        long j = Math.min(a, b);
+        return i * (i - 1) / 2 + j;
+    }
+
+    public boolean interferes(int a, int b) {
+        if (a == b) {
+            return false;
+        }
+        long i = index(a, b);
+        return (matrix[(int) (i >>> 6)] & (1L << i)) != 0;
+    }
+
+    /**
+     * Adds an edge between a and b, unless a == b or they already interfere. Returns true if the edge was added.
+     */
+    public boolean addEdge(int a, int b) {
+        if (a == b || interferes(a, b)) {
+            return false;
+        }
+        long i = index(a, b);
+        matrix[(int) (i >>> 6)] |= 1L << i;
+        addNeighbor(a, b);
+        addNeighbor(b, a);
+        edgeCount++;
+        return true;
+    }
+
+    private void addNeighbor(int n, int neighbor) {
+        int[] adj = adjacency[n];
+        if (adj == null) {
+            adj = adjacency[n] = new int[INITIAL_ADJACENCY];
+        } else if (degrees[n] == adj.length) {
+            adj = adjacency[n] = Arrays.copyOf(adj, adj.length * 2);
+        }
+        adj[degrees[n]++] = neighbor;
+    }
+
+    public int degree(int n) {
+        return degrees[n];
+    }
+
+    /**
+     * Returns the k^th neighbour of n, for 0 <= k < degree(n).
+     */
+    public int neighbor(int n, int k) {
+        return adjacency[n][k];
+    }
+}
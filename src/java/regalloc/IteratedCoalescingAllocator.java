@@ -0,0 +1,418 @@
+package regalloc;
+
+import gen.asm.Register;
+
+import java.util.*;
+
+/**
+ * Iterated register coalescing (George and Appel) over an {@link InterferenceMatrix} built for coalescing.
+ *
+ * Simplify, coalesce, freeze and spill are interleaved until the graph is empty. A move is coalesced when the
+ * Briggs or the George test shows that it cannot make the graph uncolourable. Nodes picked for spilling are
+ * only spilled if no colour is left for them once their neighbours are coloured.
+ *
+ * There are no precoloured nodes: the allocatable registers are never named by the code generator. Spilled
+ * registers are kept in memory rather than rewritten, so a single round is enough.
+ */
+public class IteratedCoalescingAllocator implements SpillingHeuristic.Candidates {
+
+    private enum NodeState { SIMPLIFY, FREEZE, SPILL, COALESCED, SELECTED }
+
+    private enum MoveState { WORKLIST, ACTIVE, COALESCED, CONSTRAINED, FROZEN }
+
+    private final InterferenceMatrix graph;
+    private final int availableRegisters;
+    private final SpillingHeuristic heuristic;
+
+    private final NodeState[] nodeStates;
+    private final int[] degrees;
+    private final int[] aliases;
+    private final int[][] nodeMoves; // moves each node takes part in, possibly with duplicates
+    private final int[] nodeMoveCounts;
+
+    private final int[] moveDsts;
+    private final int[] moveSrcs;
+    private final MoveState[] moveStates;
+
+    // entries whose node or move has since changed state are skipped
+    private final Deque<Integer> simplifyWorklist = new ArrayDeque<>();
+    private final Deque<Integer> freezeWorklist = new ArrayDeque<>();
+    private final Deque<Integer> worklistMoves = new ArrayDeque<>();
+    private int spillCount = 0;
+
+    private final Deque<Integer> selectStack = new ArrayDeque<>();
+
+    private final int[] marks; // used by the Briggs test
+    private int mark = 0;
+
+    private final Set<Register.Virtual> spilledRegisters = new HashSet<>();
+    private final Map<Register.Virtual, Integer> coloring = new HashMap<>();
+    private final Map<Register.Virtual, Register.Virtual> coalescedRegisters = new HashMap<>();
+
+    /**
+     * The moves are given as pairs of node numbers of the graph, which gets more edges as nodes are coalesced.
+     */
+    public IteratedCoalescingAllocator(InterferenceMatrix graph, int[] moveDsts, int[] moveSrcs,
+                                       int availableRegisters, SpillingHeuristic heuristic) {
+        this.graph = graph;
+        this.availableRegisters = availableRegisters;
+        this.heuristic = heuristic;
+        this.moveDsts = moveDsts;
+        this.moveSrcs = moveSrcs;
+
+        int n = graph.size();
+        nodeStates = new NodeState[n];
+        degrees = new int[n];
+        aliases = new int[n];
+        nodeMoves = new int[n][];
+        nodeMoveCounts = new int[n];
+        marks = new int[n];
+        for (int i = 0; i < n; i++) {
+            degrees[i] = graph.degree(i);
+            aliases[i] = i;
+        }
+
+        moveStates = new MoveState[moveDsts.length];
+        for (int m = 0; m < moveDsts.length; m++) {
+            moveStates[m] = MoveState.WORKLIST;
+            worklistMoves.add(m);
+            addNodeMove(moveDsts[m], m);
+            if (moveSrcs[m] != moveDsts[m]) {
+                addNodeMove(moveSrcs[m], m);
+            }
+        }
+    }
+
+    public Map<Register.Virtual, Integer> getColoring() {
+        return coloring;
+    }
+
+    public Set<Register.Virtual> getSpilledRegisters() {
+        return spilledRegisters;
+    }
+
+    /**
+     * Maps each coalesced register to the register it was merged into, which is neither coalesced itself nor in
+     * the map. A coalesced register has the colour of that register, or is spilled with it.
+     */
+    public Map<Register.Virtual, Register.Virtual> getCoalescedRegisters() {
+        return coalescedRegisters;
+    }
+
+    public void allocate() {
+        makeWorklist();
+        while (true) {
+            if (!simplifyWorklist.isEmpty()) {
+                simplify();
+            } else if (!worklistMoves.isEmpty()) {
+                coalesce();
+            } else if (!freezeWorklist.isEmpty()) {
+                freeze();
+            } else if (spillCount > 0) {
+                selectSpill();
+            } else {
+                break;
+            }
+        }
+        assignColors();
+    }
+
+    private void makeWorklist() {
+        for (int n = 0; n < graph.size(); n++) {
+            if (degrees[n] >= availableRegisters) {
+                setState(n, NodeState.SPILL);
+            } else if (moveRelated(n)) {
+                setState(n, NodeState.FREEZE);
+            } else {
+                setState(n, NodeState.SIMPLIFY);
+            }
+        }
+    }
+
+    private void setState(int n, NodeState state) {
+        if (nodeStates[n] == NodeState.SPILL) {
+            spillCount--;
+        }
+        nodeStates[n] = state;
+        switch (state) {
+            case SIMPLIFY -> simplifyWorklist.push(n);
+            case FREEZE -> freezeWorklist.push(n);
+            case SPILL -> spillCount++;
+            default -> {}
+        }
+    }
+
+    private void addNodeMove(int n, int m) {
+        if (nodeMoves[n] == null) {
+            nodeMoves[n] = new int[2];
+        } else if (nodeMoveCounts[n] == nodeMoves[n].length) {
+            nodeMoves[n] = Arrays.copyOf(nodeMoves[n], nodeMoves[n].length * 2);
+        }
+        nodeMoves[n][nodeMoveCounts[n]++] = m;
+    }
+
+    private boolean isPendingMove(int m) {
+        return moveStates[m] == MoveState.WORKLIST || moveStates[m] == MoveState.ACTIVE;
+    }
+
+    private boolean moveRelated(int n) {
+        for (int k = 0; k < nodeMoveCounts[n]; k++) {
+            if (isPendingMove(nodeMoves[n][k])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Neighbours which are neither on the select stack nor coalesced are adjacent.
+     */
+    private boolean isAdjacent(int n) {
+        return nodeStates[n] != NodeState.SELECTED && nodeStates[n] != NodeState.COALESCED;
+    }
+
+    private void simplify() {
+        int n = simplifyWorklist.pop();
+        if (nodeStates[n] != NodeState.SIMPLIFY) {
+            return;
+        }
+        nodeStates[n] = NodeState.SELECTED;
+        selectStack.push(n);
+        for (int k = 0; k < graph.degree(n); k++) {
+            int m = graph.neighbor(n, k);
+            if (isAdjacent(m)) {
+                decrementDegree(m);
+            }
+        }
+    }
+
+    private void decrementDegree(int m) {
+        int d = degrees[m]--;
+        if (d == availableRegisters && nodeStates[m] == NodeState.SPILL) {
+            enableMoves(m);
+            for (int k = 0; k < graph.degree(m); k++) {
+                int t = graph.neighbor(m, k);
+                if (isAdjacent(t)) {
+                    enableMoves(t);
+                }
+            }
+            setState(m, moveRelated(m) ? NodeState.FREEZE : NodeState.SIMPLIFY);
+        }
+    }
+
+    private void enableMoves(int n) {
+        for (int k = 0; k < nodeMoveCounts[n]; k++) {
+            int m = nodeMoves[n][k];
+            if (moveStates[m] == MoveState.ACTIVE) {
+                moveStates[m] = MoveState.WORKLIST;
+                worklistMoves.add(m);
+            }
+        }
+    }
+
+    private void coalesce() {
+        int m = worklistMoves.poll();
+        if (moveStates[m] != MoveState.WORKLIST) {
+            return;
+        }
+        int u = getAlias(moveDsts[m]);
+        int v = getAlias(moveSrcs[m]);
+
+        if (u == v) {
+            moveStates[m] = MoveState.COALESCED;
+            addWorklist(u);
+        } else if (graph.interferes(u, v)) {
+            moveStates[m] = MoveState.CONSTRAINED;
+            addWorklist(u);
+            addWorklist(v);
+        } else if (george(u, v) || briggs(u, v)) {
+            moveStates[m] = MoveState.COALESCED;
+            combine(u, v);
+            addWorklist(u);
+        } else {
+            moveStates[m] = MoveState.ACTIVE;
+        }
+    }
+
+    private void addWorklist(int u) {
+        if (nodeStates[u] == NodeState.FREEZE && !moveRelated(u) && degrees[u] < availableRegisters) {
+            setState(u, NodeState.SIMPLIFY);
+        }
+    }
+
+    /**
+     * Every neighbour of v either has a low degree or already interferes with u.
+     */
+    private boolean george(int u, int v) {
+        for (int k = 0; k < graph.degree(v); k++) {
+            int t = graph.neighbor(v, k);
+            if (isAdjacent(t) && degrees[t] >= availableRegisters && !graph.interferes(t, u)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The merged node would have fewer neighbours of high degree than there are registers.
+     */
+    private boolean briggs(int u, int v) {
+        mark++;
+        int highDegree = 0;
+        for (int n : new int[] {u, v}) {
+            for (int k = 0; k < graph.degree(n); k++) {
+                int t = graph.neighbor(n, k);
+                if (isAdjacent(t) && marks[t] != mark) {
+                    marks[t] = mark;
+                    if (degrees[t] >= availableRegisters) {
+                        highDegree++;
+                    }
+                }
+            }
+        }
+        return highDegree < availableRegisters;
+    }
+
+    private int getAlias(int n) {
+        while (nodeStates[n] == NodeState.COALESCED) {
+            n = aliases[n];
+        }
+        return n;
+    }
+
+    private void combine(int u, int v) {
+        setState(v, NodeState.COALESCED);
+        aliases[v] = u;
+        for (int k = 0; k < nodeMoveCounts[v]; k++) {
+            addNodeMove(u, nodeMoves[v][k]);
+        }
+        enableMoves(v);
+        for (int k = 0; k < graph.degree(v); k++) {
+            int t = graph.neighbor(v, k);
+            if (isAdjacent(t)) {
+                if (graph.addEdge(t, u)) {
+                    degrees[t]++;
+                    degrees[u]++;
+                }
+                decrementDegree(t);
+            }
+        }
+        if (degrees[u] >= availableRegisters && nodeStates[u] == NodeState.FREEZE) {
+            setState(u, NodeState.SPILL);
+        }
+    }
+
+    private void freeze() {
+        int u = freezeWorklist.pop();
+        if (nodeStates[u] != NodeState.FREEZE) {
+            return;
+        }
+        setState(u, NodeState.SIMPLIFY);
+        freezeMoves(u);
+    }
+
+    private void freezeMoves(int u) {
+        for (int k = 0; k < nodeMoveCounts[u]; k++) {
+            int m = nodeMoves[u][k];
+            if (!isPendingMove(m)) {
+                continue;
+            }
+            moveStates[m] = MoveState.FROZEN;
+            int x = getAlias(moveDsts[m]);
+            int y = getAlias(moveSrcs[m]);
+            int v = y == getAlias(u) ? x : y;
+            if (nodeStates[v] == NodeState.FREEZE && !moveRelated(v) && degrees[v] < availableRegisters) {
+                setState(v, NodeState.SIMPLIFY);
+            }
+        }
+    }
+
+    private void selectSpill() {
+        int m = heuristic.pickNodeToSpill(this);
+        setState(m, NodeState.SIMPLIFY);
+        freezeMoves(m);
+    }
+
+    private void assignColors() {
+        boolean[] usedColors = new boolean[availableRegisters];
+        int[] colors = new int[graph.size()];
+        Arrays.fill(colors, -1);
+
+        while (!selectStack.isEmpty()) {
+            int n = selectStack.pop();
+            Arrays.fill(usedColors, false);
+            for (int k = 0; k < graph.degree(n); k++) {
+                int w = getAlias(graph.neighbor(n, k));
+                if (colors[w] >= 0) {
+                    usedColors[colors[w]] = true;
+                }
+            }
+
+            for (int color = 0; color < availableRegisters; ++color) {
+                if (!usedColors[color]) {
+                    colors[n] = color;
+                    break;
+                }
+            }
+            if (colors[n] < 0) {
+                spilledRegisters.add(graph.register(n));
+            } else {
+                coloring.put(graph.register(n), colors[n]);
+            }
+        }
+
+        for (int n = 0; n < graph.size(); n++) {
+            if (nodeStates[n] == NodeState.COALESCED) {
+                int alias = getAlias(n);
+                coalescedRegisters.put(graph.register(n), graph.register(alias));
+                if (colors[alias] >= 0) {
+                    coloring.put(graph.register(n), colors[alias]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public InterferenceMatrix graph() {
+        return graph;
+    }
+
+    @Override
+    public int first() {
+        return next(-1);
+    }
+
+    @Override
+    public int next(int node) {
+        for (int n = node + 1; n < graph.size(); n++) {
+            if (nodeStates[n] == NodeState.SPILL) {
+                return n;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int degree(int node) {
+        return degrees[node];
+    }
+
+    @Override
+    public int maxDegree() {
+        int max = -1;
+        for (int n = first(); n >= 0; n = next(n)) {
+            max = Math.max(max, degrees[n]);
+        }
+        return max;
+    }
+
+    @Override
+    public int firstWithDegree(int degree) {
+        for (int n = first(); n >= 0; n = next(n)) {
+            if (degrees[n] == degree) {
+                return n;
+            }
+        }
+        return -1;
+    }
+}
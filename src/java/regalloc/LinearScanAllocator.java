@@ -0,0 +1,180 @@
+package regalloc;
+
+import gen.asm.Register;
+
+import java.util.*;
+
+/**
+ * Linear scan allocation (Poletto and Sarkar) for functions too large for graph colouring.
+ *
+ * Each virtual register gets a single live interval over the instruction order, from the first to the last
+ * instruction where it is live. Intervals are visited by increasing start; when every register is taken, the
+ * interval whose next use is the furthest away is spilled as a whole.
+ */
+public class LinearScanAllocator {
+
+    private final Liveness liveness;
+    private final int availableRegisters;
+
+    private final int[] starts;
+    private final int[] ends;
+    private final int[][] usePositions; // instructions defining or using each register, in order
+
+    private final Set<Register.Virtual> spilledRegisters = new HashSet<>();
+    private final Map<Register.Virtual, Integer> coloring = new HashMap<>();
+
+    public LinearScanAllocator(Liveness liveness, int availableRegisters) {
+        this.liveness = liveness;
+        this.availableRegisters = availableRegisters;
+
+        int numRegs = liveness.registerCount();
+        starts = new int[numRegs];
+        ends = new int[numRegs];
+        Arrays.fill(starts, Integer.MAX_VALUE);
+        Arrays.fill(ends, -1);
+
+        // a register live at some point of a block is live into it or defined before that point in the block, and
+        // live out of it or used after that point
+        BasicBlockCFG cfg = liveness.cfg();
+        for (int b = 0; b < cfg.blockCount(); b++) {
+            long[] in = liveness.blockLiveIn(b);
+            for (int n = Bits.next(in, 0); n >= 0; n = Bits.next(in, n + 1)) {
+                extend(n, cfg.blockStart(b));
+            }
+            long[] out = liveness.blockLiveOut(b);
+            for (int n = Bits.next(out, 0); n >= 0; n = Bits.next(out, n + 1)) {
+                extend(n, cfg.blockEnd(b) - 1);
+            }
+        }
+
+        int[] useCounts = new int[numRegs];
+        for (int i = 0; i < liveness.instructionCount(); i++) {
+            if (liveness.def(i) >= 0) {
+                useCounts[liveness.def(i)]++;
+            }
+            for (int u : liveness.uses(i)) {
+                useCounts[u]++;
+            }
+        }
+        usePositions = new int[numRegs][];
+        for (int n = 0; n < numRegs; n++) {
+            usePositions[n] = new int[useCounts[n]];
+            useCounts[n] = 0;
+        }
+        for (int i = 0; i < liveness.instructionCount(); i++) {
+            if (liveness.def(i) >= 0) {
+                addUse(liveness.def(i), i, useCounts);
+            }
+            for (int u : liveness.uses(i)) {
+                addUse(u, i, useCounts);
+            }
+        }
+    }
+
+    private void extend(int n, int position) {
+        starts[n] = Math.min(starts[n], position);
+        ends[n] = Math.max(ends[n], position);
+    }
+
+    private void addUse(int n, int position, int[] useCounts) {
+        int[] positions = usePositions[n];
+        // an instruction using a register twice, or defining and using it, is recorded once
+        if (useCounts[n] == 0 || positions[useCounts[n] - 1] != position) {
+            positions[useCounts[n]++] = position;
+        }
+        extend(n, position);
+    }
+
+    public Map<Register.Virtual, Integer> getColoring() {
+        return coloring;
+    }
+
+    public Set<Register.Virtual> getSpilledRegisters() {
+        return spilledRegisters;
+    }
+
+    public void allocate() {
+        int numRegs = liveness.registerCount();
+        int numInstructions = liveness.instructionCount();
+
+        // bucket the intervals by start
+        int[] firstByStart = new int[numInstructions + 1];
+        for (int n = 0; n < numRegs; n++) {
+            firstByStart[starts[n] + 1]++;
+        }
+        for (int i = 0; i < numInstructions; i++) {
+            firstByStart[i + 1] += firstByStart[i];
+        }
+        int[] byStart = new int[numRegs];
+        for (int n = 0; n < numRegs; n++) {
+            byStart[firstByStart[starts[n]]++] = n;
+        }
+
+        int[] colors = new int[numRegs];
+        int[] active = new int[availableRegisters]; // registers currently holding an interval
+        int numActive = 0;
+        boolean[] taken = new boolean[availableRegisters];
+
+        for (int current : byStart) {
+            int start = starts[current];
+
+            // expire the intervals ending before this one
+            for (int a = 0; a < numActive; ) {
+                if (ends[active[a]] < start) {
+                    taken[colors[active[a]]] = false;
+                    active[a] = active[--numActive];
+                } else {
+                    a++;
+                }
+            }
+
+            if (numActive < availableRegisters) {
+                int color = 0;
+                while (taken[color]) {
+                    color++;
+                }
+                taken[color] = true;
+                colors[current] = color;
+                active[numActive++] = current;
+                continue;
+            }
+
+            int furthest = -1;
+            int furthestUse = nextUse(current, start);
+            for (int a = 0; a < numActive; a++) {
+                int use = nextUse(active[a], start);
+                if (use > furthestUse) {
+                    furthest = a;
+                    furthestUse = use;
+                }
+            }
+            if (furthest < 0) {
+                spilledRegisters.add(liveness.register(current));
+            } else {
+                int spilled = active[furthest];
+                spilledRegisters.add(liveness.register(spilled));
+                colors[current] = colors[spilled];
+                active[furthest] = current;
+            }
+        }
+
+        for (int n = 0; n < numRegs; n++) {
+            Register.Virtual vr = liveness.register(n);
+            if (!spilledRegisters.contains(vr)) {
+                coloring.put(vr, colors[n]);
+            }
+        }
+    }
+
+    /**
+     * Returns the first instruction at or after position defining or using register n, or Integer.MAX_VALUE if
+     * there is none, e.g. when it is only live around a loop.
+     */
+    private int nextUse(int n, int position) {
+        int k = Arrays.binarySearch(usePositions[n], position);
+        if (k < 0) {
+            k = -k - 1;
+        }
+        return k < usePositions[n].length ? usePositions[n][k] : Integer.MAX_VALUE;
+    }
+}
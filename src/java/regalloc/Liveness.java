@@ -0,0 +1,240 @@
+package regalloc;
+
+import gen.asm.*;
+
+import java.util.*;
+
+/**
+ * Liveness of the virtual registers of a text section, computed with bit sets over basic blocks.
+ *
+ * Virtual registers are numbered densely in order of appearance. The dataflow fixpoint is only computed for blocks;
+ * the live sets of single instructions are derived on demand by walking their block backwards from its live-out set.
+ *
+ * The control flow is the one of {@link BasicBlockCFG}, whose edges are those built by {@link CFGBuilder}, so the
+ * live sets are exactly those of {@link LivenessAnalyser}.
+ */
+public final class Liveness {
+
+    @FunctionalInterface
+    public interface InstructionVisitor {
+        /**
+         * The sets are only valid during the call and must not be modified.
+         */
+        void visit(int instruction, long[] liveIn, long[] liveOut);
+    }
+
+    private final BasicBlockCFG cfg;
+    private final int[] defs; // virtual register defined by each instruction, -1 if none
+    private final int[][] uses; // virtual registers used by each instruction
+
+    private final List<Register.Virtual> registers = new ArrayList<>();
+    private final Map<Register.Virtual, Integer> numbers = new HashMap<>();
+
+    private final long[][] blockUse;
+    private final long[][] blockDef;
+    private final long[][] liveIn;
+    private final long[][] liveOut;
+
+    public Liveness(AssemblyProgram.TextSection section) {
+        this(new BasicBlockCFG(section));
+    }
+
+    public Liveness(BasicBlockCFG cfg) {
+        this.cfg = cfg;
+        int n = cfg.instructionCount();
+        defs = new int[n];
+        uses = new int[n][];
+        for (int i = 0; i < n; i++) {
+            Instruction insn = cfg.instruction(i);
+            defs[i] = insn.def() instanceof Register.Virtual vr ? number(vr) : -1;
+            uses[i] = insn.uses().stream()
+                    .filter(r -> r instanceof Register.Virtual)
+                    .mapToInt(r -> number((Register.Virtual) r))
+                    .toArray();
+        }
+
+        int numBlocks = cfg.blockCount();
+        blockUse = new long[numBlocks][];
+        blockDef = new long[numBlocks][];
+        liveIn = new long[numBlocks][];
+        liveOut = new long[numBlocks][];
+        for (int b = 0; b < numBlocks; b++) {
+            blockUse[b] = Bits.create(registers.size());
+            blockDef[b] = Bits.create(registers.size());
+            liveIn[b] = Bits.create(registers.size());
+            liveOut[b] = Bits.create(registers.size());
+            for (int i = cfg.blockEnd(b) - 1; i >= cfg.blockStart(b); i--) {
+                if (defs[i] >= 0) {
+                    Bits.clear(blockUse[b], defs[i]);
+                    Bits.set(blockDef[b], defs[i]);
+                }
+                for (int u : uses[i]) {
+                    Bits.set(blockUse[b], u);
+                }
+            }
+        }
+
+        solve();
+    }
+
+    private int number(Register.Virtual vr) {
+        Integer n = numbers.get(vr);
+        if (n == null) {
+            n = registers.size();
+            numbers.put(vr, n);
+            registers.add(vr);
+        }
+        return n;
+    }
+
+    /**
+     * Backward worklist dataflow, starting in postorder.
+     */
+    private void solve() {
+        int numBlocks = cfg.blockCount();
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+        boolean[] queued = new boolean[numBlocks];
+        for (int b : cfg.postorder()) {
+            worklist.add(b);
+            queued[b] = true;
+        }
+        for (int b = 0; b < numBlocks; b++) { // blocks unreachable from the entry
+            if (!queued[b]) {
+                worklist.add(b);
+                queued[b] = true;
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            int b = worklist.poll();
+            queued[b] = false;
+            for (int k = 0; k < cfg.successorCount(b); k++) {
+                Bits.or(liveOut[b], liveIn[cfg.successor(b, k)]);
+            }
+            if (Bits.transfer(liveIn[b], blockUse[b], liveOut[b], blockDef[b])) {
+                for (int k = 0; k < cfg.predecessorCount(b); k++) {
+                    int p = cfg.predecessor(b, k);
+                    if (!queued[p]) {
+                        queued[p] = true;
+                        worklist.add(p);
+                    }
+                }
+            }
+        }
+    }
+
+    public BasicBlockCFG cfg() {
+        return cfg;
+    }
+
+    public int instructionCount() {
+        return cfg.instructionCount();
+    }
+
+    public Instruction instruction(int i) {
+        return cfg.instruction(i);
+    }
+
+    public int registerCount() {
+        return registers.size();
+    }
+
+    /**
+     * Returns the virtual register with the given dense number.
+     */
+    public Register.Virtual register(int n) {
+        return registers.get(n);
+    }
+
+    /**
+     * Returns the dense number of the virtual register defined by the i^th instruction, or -1 if there is none.
+     */
+    public int def(int i) {
+        return defs[i];
+    }
+
+    /**
+     * Returns the dense numbers of the virtual registers used by the i^th instruction.
+     */
+    public int[] uses(int i) {
+        return uses[i];
+    }
+
+    /**
+     * Visits every instruction with its live sets, each block being walked backwards.
+     */
+    public void forEachInstruction(InstructionVisitor visitor) {
+        long[] out = Bits.create(registers.size());
+        long[] in = Bits.create(registers.size());
+        for (int b = 0; b < cfg.blockCount(); b++) {
+            Bits.copy(liveOut[b], in);
+            for (int i = cfg.blockEnd(b) - 1; i >= cfg.blockStart(b); i--) {
+                long[] tmp = out;
+                out = in;
+                in = tmp;
+                step(i, out, in);
+                visitor.visit(i, in, out);
+            }
+        }
+    }
+
+    /**
+     * Returns the set of virtual registers live into block b of {@link #cfg()}, which must not be modified.
+     */
+    public long[] blockLiveIn(int b) {
+        return liveIn[b];
+    }
+
+    /**
+     * Returns the set of virtual registers live out of block b of {@link #cfg()}, which must not be modified.
+     */
+    public long[] blockLiveOut(int b) {
+        return liveOut[b];
+    }
+
+    /**
+     * Returns a fresh copy of the set of virtual registers live before the i^th instruction.
+     */
+    public long[] liveIn(int i) {
+        long[] live = liveOut(i);
+        long[] in = Bits.create(registers.size());
+        step(i, live, in);
+        return in;
+    }
+
+    /**
+     * Returns a fresh copy of the set of virtual registers live after the i^th instruction.
+     */
+    public long[] liveOut(int i) {
+        int b = cfg.blockOf(i);
+        long[] live = liveOut[b].clone();
+        long[] in = Bits.create(registers.size());
+        for (int j = cfg.blockEnd(b) - 1; j > i; j--) {
+            step(j, live, in);
+            long[] tmp = live;
+            live = in;
+            in = tmp;
+        }
+        return live;
+    }
+
+    /**
+     * Returns true if the virtual register with the given dense number is in the set.
+     */
+    public static boolean contains(long[] set, int n) {
+        return Bits.get(set, n);
+    }
+
+    /**
+     * in = uses(i) | (out - def(i))
+     */
+    private void step(int i, long[] out, long[] in) {
+        Bits.copy(out, in);
+        if (defs[i] >= 0) {
+            Bits.clear(in, defs[i]);
+        }
+        for (int u : uses[i]) {
+            Bits.set(in, u);
+        }
+    }
+}
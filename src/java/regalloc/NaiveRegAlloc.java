@@ -7,33 +7,37 @@ import gen.asm.*;
 import java.util.*;
 
 /**
- * A very naive register allocator which allocates each virtual registers in the data section with a label.
+ * A very naive register allocator which allocates each virtual registers in a stack slot of its function's frame,
+ * or in the data section with a label if the function has no frame recorded.
  * The allocator assumes that each function has a single corresponding text section.
  */
 public final class NaiveRegAlloc implements AssemblyPass {
 
     private NaiveRegAlloc() { }
 
-    private static Map<Register.Virtual, Label>  collectVirtualRegisters(AssemblyProgram.TextSection section) {
-        final Map<Register.Virtual, Label> vrMap = new HashMap<>();
+    private static SpillSlots collectVirtualRegisters(AssemblyProgram.TextSection section,
+                                                      AssemblyProgram.DataSection dataSection) {
+        // the temporaries of the instructions are $t0 to $t5, which leaves $t6 and $t7 to address labelled slots
+        final SpillSlots vrSlots = new SpillSlots(section, dataSection, Register.Arch.t6, Register.Arch.t7);
 
         section.items.forEach((item) -> {
             switch (item) {
                 case Instruction insn -> insn.registers().forEach(reg -> {
                     if (reg instanceof Register.Virtual) {
                         Register.Virtual vr = (Register.Virtual) reg;
-                        Label l = Label.create(vr.toString());
-                        vrMap.put(vr, l);
+                        if (!vrSlots.contains(vr)) {
+                            vrSlots.allocate(vr);
+                        }
                     }
                 });
                 default -> {} // nothing to do
             }
         });
 
-        return vrMap;
+        return vrSlots;
     }
 
-    private static void emitInstructionWithoutVirtualRegister(Instruction insn, Map<Register.Virtual, Label> vrMap, AssemblyProgram.TextSection section) {
+    private static void emitInstructionWithoutVirtualRegister(Instruction insn, SpillSlots vrSlots, AssemblyProgram.TextSection section) {
 
         section.emit("Original instruction: "+insn);
 
@@ -46,7 +50,6 @@ public final class NaiveRegAlloc implements AssemblyPass {
         insn.registers().forEach(reg -> {
             if (reg.isVirtual()) {
                 Register tmp = freeTempRegs.pop();
-                Label label = vrMap.get(reg);
                 vrToAr.put(reg, tmp);
             }
         });
@@ -55,9 +58,7 @@ public final class NaiveRegAlloc implements AssemblyPass {
         insn.uses().forEach(reg -> {
             if (reg.isVirtual()) {
                 Register tmp = vrToAr.get(reg);
-                Label label = vrMap.get(reg);
-                section.emit(OpCode.LA, tmp, label);
-                section.emit(OpCode.LW, tmp, tmp, 0);
+                vrSlots.emitLoad(section, tmp, (Register.Virtual) reg);
             }
         });
 
@@ -67,11 +68,7 @@ public final class NaiveRegAlloc implements AssemblyPass {
         if (insn.def() != null) {
             if (insn.def().isVirtual()) {
                 Register tmpVal = vrToAr.get(insn.def());
-                Register tmpAddr = freeTempRegs.remove(0);
-                Label label = vrMap.get(insn.def());
-
-                section.emit(OpCode.LA, tmpAddr, label);
-                section.emit(OpCode.SW, tmpVal, tmpAddr, 0);
+                vrSlots.emitStore(section, tmpVal, (Register.Virtual) insn.def());
             }
         }
     }
@@ -89,23 +86,11 @@ public final class NaiveRegAlloc implements AssemblyPass {
         prog.textSections.forEach(section -> {
             {
 
-                // map from virtual register to corresponding uniquely created label
-                final Map<Register.Virtual, Label> vrMap = collectVirtualRegisters(section);
-
-                // allocate one label for each virtual register in a new data section
-                //AssemblyProgram.DataSection dataSec = newProg.newSection(AssemblyProgram.Section.Type.DATA);
-                newProg.dataSection.emit("Allocated labels for virtual registers");
-                vrMap.forEach((vr, lbl) -> {
-                    newProg.dataSection.emit(lbl);
-                    newProg.dataSection.emit(new Directive("space " + 4));
-                });
+                // map from virtual register to its stack slot
+                final SpillSlots vrSlots = collectVirtualRegisters(section, newProg.dataSection);
 
                 // emit new instructions that don't use any virtual registers and transform push/pop registers instructions into real sequence of instructions
-                // When dealign with push/pop registers, we assume that if a virtual register is used in the section, then it must be written into.
                 final AssemblyProgram.TextSection newSection = newProg.emitNewTextSection();
-                List<Label> vrLabels = new LinkedList<>(vrMap.values());
-                List<Label> reverseVrLabels = new LinkedList<>(vrLabels);
-                Collections.reverse(reverseVrLabels);
 
                 section.items.forEach((item) -> {
                     switch (item) {
@@ -113,28 +98,12 @@ public final class NaiveRegAlloc implements AssemblyPass {
                         case Instruction insn -> {
                             if (insn == Instruction.Nullary.pushRegisters) {
                                 newSection.emit("Original instruction: pushRegisters");
-                                for (Label l : vrLabels) {
-                                    // load content of memory at label into $t0
-                                    newSection.emit(OpCode.LA, Register.Arch.t0, l);
-                                    newSection.emit(OpCode.LW, Register.Arch.t0, Register.Arch.t0, 0);
-
-                                    // push $t0 onto stack
-                                    newSection.emit(OpCode.ADDIU, Register.Arch.sp, Register.Arch.sp, -4);
-                                    newSection.emit(OpCode.SW, Register.Arch.t0, Register.Arch.sp, 0);
-                                }
+                                vrSlots.emitReserve(newSection);
                             } else if (insn == Instruction.Nullary.popRegisters) {
                                 newSection.emit("Original instruction: popRegisters");
-                                for (Label l : reverseVrLabels) {
-                                    // pop from stack into $t0
-                                    newSection.emit(OpCode.LW, Register.Arch.t0, Register.Arch.sp, 0);
-                                    newSection.emit(OpCode.ADDIU, Register.Arch.sp, Register.Arch.sp, 4);
-
-                                    // store content of $t0 in memory at label
-                                    newSection.emit(OpCode.LA, Register.Arch.t1, l);
-                                    newSection.emit(OpCode.SW, Register.Arch.t0, Register.Arch.t1, 0);
-                                }
+                                vrSlots.emitRelease(newSection);
                             } else
-                                emitInstructionWithoutVirtualRegister(insn, vrMap, newSection);
+                                emitInstructionWithoutVirtualRegister(insn, vrSlots, newSection);
                         }
                     }
                 });
@@ -0,0 +1,143 @@
+package regalloc;
+
+import gen.asm.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Slots of a function, one word each, holding the virtual registers spilled in it and the architectural registers it
+ * saves.
+ *
+ * The slots lie right below the local variables, in the frame built by the prologue of {@link gen.FunCodeGen}:
+ * pushRegisters reserves them all at once, and they are addressed from $fp, which does not move in the body of the
+ * function. Every activation thus has its own slots, and a register is read or written with a single load or store.
+ *
+ * Frameless functions do not set up $fp. As they make no call, $sp does not move in their body either, and their
+ * slots are addressed from it; popRegisters frees them.
+ *
+ * A section whose {@link FrameLayout} was not recorded, or which has no pushRegisters, keeps its slots under labels of
+ * the data section. pushRegisters then saves their values on the stack and popRegisters restores them, so that a
+ * recursive call does not overwrite those of its caller.
+ */
+final class SpillSlots {
+
+    private final Map<Register, Integer> ends = new HashMap<>(); // bytes reserved up to the end of each slot
+    private final FrameLayout frame; // null when the slots are in the data section
+    private final AssemblyProgram.DataSection dataSection;
+    private final Map<Register, Label> labels = new HashMap<>();
+    private final List<Label> dataSlots = new ArrayList<>();
+    private final Register.Arch scratch0;
+    private final Register.Arch scratch1;
+    private int size = 0;
+
+    /**
+     * Creates the slots of section. Slots in the data section are emitted into dataSection, and written through
+     * scratch0, or scratch1 when scratch0 holds the value: neither may be live where the slots are read or written.
+     */
+    SpillSlots(AssemblyProgram.TextSection section, AssemblyProgram.DataSection dataSection,
+               Register.Arch scratch0, Register.Arch scratch1) {
+        this.frame = section.items.contains(Instruction.Nullary.pushRegisters) ? FrameLayout.of(section) : null;
+        this.dataSection = dataSection;
+        this.scratch0 = scratch0;
+        this.scratch1 = scratch1;
+    }
+
+    private int offset(Register reg) {
+        int end = ends.get(reg);
+        return frame.hasFramePointer() ? frame.spOffset() - end : size - end;
+    }
+
+    /**
+     * Gives a new slot to reg.
+     */
+    void allocate(Register reg) {
+        size += 4;
+        ends.put(reg, size);
+        if (frame == null) {
+            Label label = Label.create(reg.toString().replace("$", ""));
+            dataSection.emit(label);
+            dataSection.emit(new Directive("space", 4));
+            labels.put(reg, label);
+            dataSlots.add(label);
+        }
+    }
+
+    /**
+     * Makes vr share the slot of another register, which must have one.
+     */
+    void share(Register.Virtual vr, Register.Virtual with) {
+        ends.put(vr, ends.get(with));
+        if (frame == null) {
+            labels.put(vr, labels.get(with));
+        }
+    }
+
+    boolean contains(Register reg) {
+        return ends.containsKey(reg);
+    }
+
+    /**
+     * Returns the number of bytes taken by the slots.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Reserves the slots, where pushRegisters is. The values of slots in the data section are saved instead.
+     */
+    void emitReserve(AssemblyProgram.TextSection section) {
+        if (size > 0) {
+            section.emit(OpCode.ADDIU, Register.Arch.sp, Register.Arch.sp, -size);
+        }
+        if (frame == null) {
+            for (int i = 0; i < dataSlots.size(); i++) {
+                section.emit(OpCode.LA, scratch0, dataSlots.get(i));
+                section.emit(OpCode.LW, scratch0, scratch0, 0);
+                section.emit(OpCode.SW, scratch0, Register.Arch.sp, 4 * i);
+            }
+        }
+    }
+
+    /**
+     * Frees the slots, where popRegisters is, unless the epilogue frees them with the frame. The values of slots in
+     * the data section are restored instead.
+     */
+    void emitRelease(AssemblyProgram.TextSection section) {
+        if (frame == null) {
+            for (int i = 0; i < dataSlots.size(); i++) {
+                section.emit(OpCode.LW, scratch0, Register.Arch.sp, 4 * i);
+                section.emit(OpCode.LA, scratch1, dataSlots.get(i));
+                section.emit(OpCode.SW, scratch0, scratch1, 0);
+            }
+        }
+        if (size > 0 && (frame == null || !frame.hasFramePointer())) {
+            section.emit(OpCode.ADDIU, Register.Arch.sp, Register.Arch.sp, size);
+        }
+    }
+
+    /**
+     * Loads dst from the slot of reg, which is dst itself for a saved architectural register.
+     */
+    void emitLoad(AssemblyProgram.TextSection section, Register dst, Register reg) {
+        if (frame == null) {
+            section.emit(OpCode.LA, dst, labels.get(reg));
+            section.emit(OpCode.LW, dst, dst, 0);
+        } else {
+            section.emit(OpCode.LW, dst, frame.base(), offset(reg));
+        }
+    }
+
+    void emitStore(AssemblyProgram.TextSection section, Register src, Register reg) {
+        if (frame == null) {
+            Register.Arch address = src == scratch0 ? scratch1 : scratch0;
+            section.emit(OpCode.LA, address, labels.get(reg));
+            section.emit(OpCode.SW, src, address, 0);
+        } else {
+            section.emit(OpCode.SW, src, frame.base(), offset(reg));
+        }
+    }
+}
@@ -1,29 +1,87 @@
 package regalloc;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 @FunctionalInterface
 public interface SpillingHeuristic {
 
-    IGNode pickNodeToSpill(List<IGNode> candidates, Map<IGNode, Integer> degreeMap);
+    /**
+     * Picks the node to spill when every node left in the graph has a degree of at least the number of registers.
+     */
+    int pickNodeToSpill(Candidates candidates);
+
+    /**
+     * The nodes left in the graph being simplified, in the order the allocator considers them.
+     */
+    interface Candidates {
+
+        InterferenceMatrix graph();
+
+        /**
+         * Returns the first node left, or -1 if there is none.
+         */
+        int first();
+
+        /**
+         * Returns the node left after the given one, or -1 if there is none.
+         */
+        int next(int node);
+
+        /**
+         * Returns the degree of a node left, counting only its neighbours left.
+         */
+        int degree(int node);
+
+        int maxDegree();
 
-    SpillingHeuristic MOST_CONNECTED = (candidates, degreeMap) -> {
-        Map<Integer, List<IGNode>> buckets = new HashMap<>();
-        int maxDegree = -1;
-        for (IGNode node : candidates) {
-            int degree = degreeMap.get(node);
-            buckets.computeIfAbsent(degree, d -> new ArrayList<>()).add(node);
-            if (degree > maxDegree) {
-                maxDegree = degree;
+        /**
+         * Returns the first node left with the given degree, or -1 if there is none.
+         */
+        int firstWithDegree(int degree);
+    }
+
+    SpillingHeuristic MOST_CONNECTED = candidates -> candidates.firstWithDegree(candidates.maxDegree());
+
+    SpillingHeuristic FIRST = Candidates::first;
+
+    /**
+     * Spills the node whose cost, as given by {@link #spillCosts}, is the lowest relative to its degree, i.e. the
+     * cheapest one to spill for the most constraints removed from the graph. The first one is taken on ties.
+     */
+    static SpillingHeuristic costPerDegree(Liveness liveness) {
+        double[] costs = spillCosts(liveness);
+        return candidates -> {
+            int best = -1;
+            double bestRatio = Double.POSITIVE_INFINITY;
+            for (int node = candidates.first(); node >= 0; node = candidates.next(node)) {
+                double ratio = costs[node] / Math.max(candidates.degree(node), 1);
+                if (best < 0 || ratio < bestRatio) {
+                    best = node;
+                    bestRatio = ratio;
+                }
             }
-        }
-        List<IGNode> mostConnected = buckets.get(maxDegree);
-        return mostConnected.getFirst();
-    };
+            return best;
+        };
+    }
 
-    SpillingHeuristic FIRST = (candidates, degreeMap) -> candidates.getFirst();
+    /**
+     * Estimates the number of loads and stores spilling each register would add, indexed as in liveness: every
+     * definition and use counts 10 to the power of the loop nesting depth of its block.
+     */
+    static double[] spillCosts(Liveness liveness) {
+        BasicBlockCFG cfg = liveness.cfg();
+        int[] depths = cfg.loopDepths();
+        double[] costs = new double[liveness.registerCount()];
+        for (int b = 0; b < cfg.blockCount(); b++) {
+            double weight = Math.pow(10, depths[b]);
+            for (int i = cfg.blockStart(b); i < cfg.blockEnd(b); i++) {
+                if (liveness.def(i) >= 0) {
+                    costs[liveness.def(i)] += weight;
+                }
+                for (int u : liveness.uses(i)) {
+                    costs[u] += weight;
+                }
+            }
+        }
+        return costs;
+    }
 
 }
@@ -169,8 +169,8 @@ public class NameAnalyzer extends BaseSemanticAnalyzer {
 
 				Scope oldScope = scope;
 				scope = new Scope(oldScope);
-				for (ASTNode n : fd.children()) {
-					visit(n);
+				for (int i = 0; i < fd.childCount(); i++) {
+					visit(fd.child(i));
 				}
 				scope = oldScope;
 			}
@@ -221,8 +221,8 @@ public class NameAnalyzer extends BaseSemanticAnalyzer {
 			}
 
 			default -> {
-				for (ASTNode c : node.children())
-					visit(c);
+				for (int i = 0; i < node.childCount(); i++)
+					visit(node.child(i));
 			}
 		};
 	}
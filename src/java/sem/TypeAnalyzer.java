@@ -67,6 +67,8 @@ public class TypeAnalyzer extends BaseSemanticAnalyzer {
 
 			case StructTypeDecl std -> {
 				String structName = std.name;
+				int errorsBefore = getNumErrors();
+				boolean fieldsSized = true;
 
 				if (declaredStructs.containsKey(structName)) {
 					error("struct '" + structName + "' is declared multiple times");
@@ -87,6 +89,15 @@ public class TypeAnalyzer extends BaseSemanticAnalyzer {
 					if (fieldType instanceof StructType st && st.name.equals(structName)) {
 						error("recursive struct reference - cannot infer size");
 					}
+					// a struct declared with errors has no layout, which has already been reported
+					if (fieldType instanceof StructType st && (st.std == null || st.std.layout == null)) {
+						fieldsSized = false;
+					}
+				}
+				// the fields are sized unless they use a struct without a layout, as they may only use structs
+				// declared before
+				if (getNumErrors() == errorsBefore && fieldsSized) {
+					std.layout = new StructLayout(std.fields);
 				}
 				yield BaseType.NONE;
 			}
@@ -100,15 +111,15 @@ public class TypeAnalyzer extends BaseSemanticAnalyzer {
 			}
 
 			case FunDecl fd -> {
-				for (ASTNode n : fd.children())
-					visit(n);
+				for (int i = 0; i < fd.childCount(); i++)
+					visit(fd.child(i));
 				yield BaseType.NONE;
 			}
 
 			case FunDef fd -> {
 				currentFunction = fd;
-				for (ASTNode n : fd.children())
-					visit(n);
+				for (int i = 0; i < fd.childCount(); i++)
+					visit(fd.child(i));
 				currentFunction = null;
 				yield BaseType.NONE;
 			}
@@ -469,8 +480,8 @@ public class TypeAnalyzer extends BaseSemanticAnalyzer {
 
 
 			default -> {
-				for (ASTNode n : node.children())
-					visit(n);
+				for (int i = 0; i < node.childCount(); i++)
+					visit(node.child(i));
 				yield BaseType.NONE;
 			}
 
@@ -0,0 +1,65 @@
+import ast.ASTPrinter;
+import ast.Program;
+import lexer.Scanner;
+import lexer.Tokeniser;
+import parser.Parser;
+
+import java.io.*;
+
+/**
+ * Parses programs with both expression parsers and checks they print the same AST and report the same errors.
+ * Usage: ExprParsingDiffTest [file.c ...]. Without arguments, programs are generated with {@link MiniCGenerator}.
+ */
+public class ExprParsingDiffTest {
+
+    private static final int GENERATED_PROGRAMS = 1000;
+
+    static String parse(File f, Parser.ExprParsing exprParsing) throws IOException {
+        Scanner scanner = new Scanner(f);
+        Parser parser = new Parser(new Tokeniser(scanner));
+        parser.setExprParsing(exprParsing);
+
+        PrintStream out = System.out;
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(messages));
+        Program program;
+        try {
+            program = parser.parse();
+        } finally {
+            System.setOut(out);
+        }
+        scanner.close();
+
+        StringWriter ast = new StringWriter();
+        new ASTPrinter(new PrintWriter(ast)).visit(program);
+        return messages + "errors: " + parser.getNumErrors() + "\n" + ast;
+    }
+
+    static void assertSameParse(File f) throws IOException {
+        String expected = parse(f, Parser.ExprParsing.RECURSIVE_DESCENT);
+        String actual = parse(f, Parser.ExprParsing.PRECEDENCE_CLIMBING);
+        if (!expected.equals(actual)) {
+            throw new AssertionError("Expression parsers disagree on " + f + ":\n" + expected + "\n" + actual);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+            for (String arg : args) {
+                assertSameParse(new File(arg));
+            }
+            System.out.println(args.length + " files parsed identically");
+            return;
+        }
+
+        File f = File.createTempFile("expr_parsing", ".c");
+        f.deleteOnExit();
+        for (int i = 0; i < GENERATED_PROGRAMS; i++) {
+            try (FileWriter writer = new FileWriter(f)) {
+                writer.write(MiniCGenerator.generateProgram());
+            }
+            assertSameParse(f);
+        }
+        System.out.println(GENERATED_PROGRAMS + " generated programs parsed identically");
+    }
+}
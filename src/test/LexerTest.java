@@ -190,5 +190,22 @@ public class LexerTest {
         testLexer(fileName, expectedTokens);
     }
 
+    @Test
+    void testLongWhitespaceAndCommentRun() throws IOException {
+        File file = File.createTempFile("whitespace", ".c");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)) {
+            for (int i = 0; i < 1_000_000; ++i) {
+                writer.write(i % 10 == 0 ? "// comment\n" : " ");
+            }
+            writer.write("int");
+        }
+
+        Tokeniser tokeniser = new Tokeniser(new Scanner(file));
+        Token t = tokeniser.nextToken();
+        assertEquals(Token.Category.INT, t.category);
+        assertEquals(Token.Category.EOF, tokeniser.nextToken().category);
+    }
+
 
 }
@@ -0,0 +1,81 @@
+import ast.Program;
+import gen.CodeGenerator;
+import gen.asm.AssemblyPass;
+import lexer.MappedScanner;
+import lexer.TokenStream;
+import lexer.Tokeniser;
+import parser.Parser;
+import peephole.PeepholeOptimiser;
+import regalloc.GraphColouringRegAlloc;
+import regalloc.NaiveRegAlloc;
+import sem.SemanticAnalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the dynamic number of instructions executed by programs compiled with and without the peephole optimiser,
+ * and prints how many times each of its rules applied.
+ * Usage: PeepholeBenchmark [file.c ...]. Without an argument, the code generation tests are used. The programs reading
+ * their standard input are given the one in {@link SpillBenchmark#INPUTS}.
+ */
+public class PeepholeBenchmark {
+
+    private static final File DEFAULT_INPUTS = new File("src/test/code_gen_tests/c_files");
+
+    static File compile(File source, AssemblyPass regAlloc, AssemblyPass optimiser) throws IOException {
+        MappedScanner scanner = new MappedScanner(source);
+        Tokeniser tokeniser = new Tokeniser(scanner);
+        Parser parser = new Parser(new TokenStream(tokeniser, scanner));
+        Program program = parser.parse();
+        if (tokeniser.hasErrors() || parser.hasErrors()) {
+            throw new IllegalStateException("Cannot parse " + source);
+        }
+        SemanticAnalyzer sem = new SemanticAnalyzer();
+        sem.analyze(program);
+        if (sem.hasErrors()) {
+            throw new IllegalStateException("Semantic errors in " + source);
+        }
+
+        File asm = File.createTempFile("peephole_benchmark", ".asm");
+        asm.deleteOnExit();
+        new CodeGenerator(regAlloc, optimiser).emitProgram(program, asm);
+        return asm;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<File> sources = new ArrayList<>();
+        for (String arg : args) {
+            sources.add(new File(arg));
+        }
+        if (sources.isEmpty()) {
+            File[] files = DEFAULT_INPUTS.listFiles((dir, name) -> name.endsWith(".c"));
+            Arrays.sort(files);
+            sources.addAll(Arrays.asList(files));
+        }
+
+        Map<String, AssemblyPass> regAllocs = Map.of("naive", NaiveRegAlloc.INSTANCE,
+                "colour", GraphColouringRegAlloc.INSTANCE);
+        PeepholeOptimiser optimiser = new PeepholeOptimiser();
+        System.out.printf("%-36s %14s %14s%n", "", "without", "with");
+        for (File source : sources) {
+            String input = SpillBenchmark.INPUTS.getOrDefault(source.getName(), "");
+            for (String name : List.of("naive", "colour")) {
+                List<String> without = SpillBenchmark.run(compile(source, regAllocs.get(name), AssemblyPass.NOP), input);
+                List<String> with = SpillBenchmark.run(compile(source, regAllocs.get(name), optimiser), input);
+                if (!without.subList(0, without.size() - 1).equals(with.subList(0, with.size() - 1))) {
+                    throw new AssertionError("Output of " + source + " changed with the peephole optimiser");
+                }
+                System.out.printf("%-36s %14d %14d%n", source.getName() + ", " + name,
+                        SpillBenchmark.instructionCount(without), SpillBenchmark.instructionCount(with));
+            }
+        }
+
+        System.out.println("rule hits");
+        optimiser.hitCounts().forEach((rule, hits) -> System.out.printf("  %-20s %10d%n", rule, hits));
+    }
+}
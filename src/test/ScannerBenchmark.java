@@ -0,0 +1,118 @@
+import lexer.MappedScanner;
+import lexer.Scanner;
+import lexer.Token;
+import lexer.TokenStream;
+import lexer.Tokeniser;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Compares the throughput of the reader based {@link Scanner} against {@link MappedScanner}.
+ * Usage: ScannerBenchmark [file.c]. Without an argument, a large file is generated with {@link MiniCGenerator}.
+ */
+public class ScannerBenchmark {
+
+    private static final int WARMUP_RUNS = 5;
+    private static final int RUNS = 10;
+    private static final int GENERATED_TARGET_SIZE = 8 * 1024 * 1024;
+
+    interface ScannerFactory {
+        Scanner create(File f) throws IOException;
+    }
+
+    static File generateInput() throws IOException {
+        File f = File.createTempFile("scanner_benchmark", ".c");
+        f.deleteOnExit();
+        try (FileWriter writer = new FileWriter(f)) {
+            long size = 0;
+            while (size < GENERATED_TARGET_SIZE) {
+                String program = MiniCGenerator.generateProgram();
+                writer.write(program);
+                size += program.length();
+            }
+        }
+        return f;
+    }
+
+    static long scan(ScannerFactory factory, File f) throws IOException {
+        Scanner scanner = factory.create(f);
+        long checksum = 0;
+        while (scanner.hasNext()) {
+            checksum = 31 * checksum + scanner.next();
+        }
+        checksum = 31 * checksum + scanner.getLine();
+        checksum = 31 * checksum + scanner.getColumn();
+        scanner.close();
+        return checksum;
+    }
+
+    static long tokenise(ScannerFactory factory, File f) throws IOException {
+        Scanner scanner = factory.create(f);
+        Tokeniser tokeniser = new Tokeniser(scanner);
+        long count = 0;
+        for (Token t = tokeniser.nextToken(); t.category != Token.Category.EOF; t = tokeniser.nextToken()) {
+            count++;
+        }
+        scanner.close();
+        return count;
+    }
+
+    static long streamTokens(ScannerFactory factory, File f) throws IOException {
+        MappedScanner scanner = (MappedScanner) factory.create(f);
+        TokenStream stream = new TokenStream(new Tokeniser(scanner), scanner);
+        int i = 0;
+        while (stream.category(i) != Token.Category.EOF) {
+            i++;
+        }
+        scanner.close();
+        return i;
+    }
+
+    static void assertSameStream(File f) throws IOException {
+        Scanner expected = new Scanner(f);
+        Scanner actual = new MappedScanner(f);
+        while (expected.hasNext()) {
+            if (!actual.hasNext() || expected.next() != actual.next()
+                    || expected.getLine() != actual.getLine() || expected.getColumn() != actual.getColumn()) {
+                throw new AssertionError("Scanners diverge at " + expected.getLine() + ":" + expected.getColumn());
+            }
+        }
+        if (actual.hasNext()) {
+            throw new AssertionError("MappedScanner produced extra characters");
+        }
+        expected.close();
+        actual.close();
+    }
+
+    interface Pass {
+        long run(ScannerFactory factory, File f) throws IOException;
+    }
+
+    static void bench(String name, Pass pass, ScannerFactory factory, File f) throws IOException {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            pass.run(factory, f);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            pass.run(factory, f);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9 / RUNS;
+        double mb = f.length() / (1024.0 * 1024.0);
+        System.out.printf("%-30s %8.2f ms %8.1f MB/s%n", name, seconds * 1000, mb / seconds);
+    }
+
+    public static void main(String[] args) throws IOException {
+        File f = args.length > 0 ? new File(args[0]) : generateInput();
+        System.out.printf("Input: %s (%.1f MB)%n", f, f.length() / (1024.0 * 1024.0));
+
+        assertSameStream(f);
+
+        bench("scan Scanner", ScannerBenchmark::scan, Scanner::new, f);
+        bench("scan MappedScanner", ScannerBenchmark::scan, MappedScanner::new, f);
+        bench("tokenise Scanner", ScannerBenchmark::tokenise, Scanner::new, f);
+        bench("tokenise MappedScanner", ScannerBenchmark::tokenise, MappedScanner::new, f);
+        bench("token stream MappedScanner", ScannerBenchmark::streamTokens, MappedScanner::new, f);
+    }
+}
@@ -0,0 +1,183 @@
+import ast.Program;
+import gen.CodeGenerator;
+import gen.asm.AssemblyPass;
+import lexer.MappedScanner;
+import lexer.TokenStream;
+import lexer.Tokeniser;
+import parser.Parser;
+import regalloc.GraphColouringRegAlloc;
+import regalloc.Liveness;
+import regalloc.SpillingHeuristic;
+import sem.SemanticAnalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Compares the dynamic number of instructions, loads and stores executed by programs allocated with the most
+ * connected node spilled against the cheapest one per degree, weighted by loop depth.
+ * Usage: SpillBenchmark [file.c ...]. Without an argument, the code generation tests are used. The programs reading
+ * their standard input are given the one in {@link #INPUTS}.
+ *
+ * Programs run in MARS, which counts the instructions executed. Loads and stores are counted by running the program
+ * again with a nop after each of them.
+ */
+public class SpillBenchmark {
+
+    private static final String MARS = "tools/Mars4_5.jar";
+    private static final String MAX_STEPS = "100000000";
+    private static final File DEFAULT_INPUTS = new File("src/test/code_gen_tests/c_files");
+
+    /**
+     * The standard input of the test programs which read one, by file name. Other programs read nothing.
+     */
+    static final Map<String, String> INPUTS = Map.of(
+            "fib.c", "10\n",
+            "tictactoe.c", "a\n1\nb\n1\na\n2\nb\n2\na\n3\nn\n");
+
+    private static final List<String> LOADS = List.of("lw", "lh", "lhu", "lb", "lbu");
+    private static final List<String> STORES = List.of("sw", "sh", "sb");
+
+    record Config(String name, AssemblyPass regAlloc) {}
+
+    record Counts(long instructions, long loads, long stores) {
+        Counts plus(Counts other) {
+            return new Counts(instructions + other.instructions, loads + other.loads, stores + other.stores);
+        }
+    }
+
+    static File compile(File source, AssemblyPass regAlloc) throws IOException {
+        MappedScanner scanner = new MappedScanner(source);
+        Tokeniser tokeniser = new Tokeniser(scanner);
+        Parser parser = new Parser(new TokenStream(tokeniser, scanner));
+        Program program = parser.parse();
+        if (tokeniser.hasErrors() || parser.hasErrors()) {
+            throw new IllegalStateException("Cannot parse " + source);
+        }
+        SemanticAnalyzer sem = new SemanticAnalyzer();
+        sem.analyze(program);
+        if (sem.hasErrors()) {
+            throw new IllegalStateException("Semantic errors in " + source);
+        }
+
+        File asm = File.createTempFile("spill_benchmark", ".asm");
+        asm.deleteOnExit();
+        new CodeGenerator(regAlloc).emitProgram(program, asm);
+        return asm;
+    }
+
+    /**
+     * Copies the program with a nop after every instruction with one of the given mnemonics.
+     */
+    static File withNopsAfter(File asm, List<String> mnemonics) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(asm.toPath())) {
+            lines.add(line);
+            String[] words = line.trim().split("\\s+", 2);
+            if (mnemonics.contains(words[0])) {
+                lines.add("nop");
+            }
+        }
+        File copy = File.createTempFile("spill_benchmark", ".asm");
+        copy.deleteOnExit();
+        Files.write(copy.toPath(), lines);
+        return copy;
+    }
+
+    /**
+     * Runs the program in MARS and returns its output, the last line being the number of instructions executed.
+     */
+    static List<String> run(File asm, String input) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-jar", MARS, "sm", "nc", "me", "ic", MAX_STEPS,
+                asm.getPath());
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        try (OutputStream stdin = process.getOutputStream()) {
+            stdin.write(input.getBytes());
+        }
+        String output = new String(process.getInputStream().readAllBytes());
+        process.waitFor();
+
+        List<String> lines = new ArrayList<>(Arrays.asList(output.split("\n")));
+        lines.removeIf(String::isBlank);
+        if (lines.isEmpty() || !lines.get(lines.size() - 1).trim().matches("\\d+")) {
+            throw new IllegalStateException("No instruction count from MARS for " + asm + ":\n" + output);
+        }
+        return lines;
+    }
+
+    static long instructionCount(List<String> output) {
+        return Long.parseLong(output.get(output.size() - 1).trim());
+    }
+
+    /**
+     * Measures the program allocated by regAlloc, and replaces the content of programOutput with what it prints.
+     */
+    static Counts measure(File source, AssemblyPass regAlloc, List<String> programOutput)
+            throws IOException, InterruptedException {
+        String input = INPUTS.getOrDefault(source.getName(), "");
+        File asm = compile(source, regAlloc);
+
+        List<String> output = run(asm, input);
+        programOutput.clear();
+        programOutput.addAll(output.subList(0, output.size() - 1));
+
+        long instructions = instructionCount(output);
+        long loads = instructionCount(run(withNopsAfter(asm, LOADS), input)) - instructions;
+        long stores = instructionCount(run(withNopsAfter(asm, STORES), input)) - instructions;
+        return new Counts(instructions, loads, stores);
+    }
+
+    static void print(String name, Counts counts) {
+        System.out.printf("%-28s %14d %12d %12d%n", name, counts.instructions, counts.loads, counts.stores);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<File> sources = new ArrayList<>();
+        for (String arg : args) {
+            sources.add(new File(arg));
+        }
+        if (sources.isEmpty()) {
+            File[] files = DEFAULT_INPUTS.listFiles((dir, name) -> name.endsWith(".c"));
+            Arrays.sort(files);
+            sources.addAll(Arrays.asList(files));
+        }
+
+        Function<Liveness, SpillingHeuristic> mostConnected = liveness -> SpillingHeuristic.MOST_CONNECTED;
+        List<Config> configs = List.of(
+                new Config("colour, most connected", GraphColouringRegAlloc.INSTANCE.withSpillingHeuristic(mostConnected)),
+                new Config("colour, cost per degree", GraphColouringRegAlloc.INSTANCE),
+                new Config("irc, most connected", GraphColouringRegAlloc.COALESCING.withSpillingHeuristic(mostConnected)),
+                new Config("irc, cost per degree", GraphColouringRegAlloc.COALESCING));
+
+        Counts[] totals = new Counts[configs.size()];
+        Arrays.fill(totals, new Counts(0, 0, 0));
+        System.out.printf("%-28s %14s %12s %12s%n", "", "instructions", "loads", "stores");
+        for (File source : sources) {
+            System.out.println(source);
+            List<String> expectedOutput = null;
+            for (int c = 0; c < configs.size(); c++) {
+                List<String> programOutput = new ArrayList<>();
+                Counts counts = measure(source, configs.get(c).regAlloc(), programOutput);
+                if (expectedOutput != null && !expectedOutput.equals(programOutput)) {
+                    throw new AssertionError("Output of " + source + " changed with " + configs.get(c).name());
+                }
+                expectedOutput = programOutput;
+                print("  " + configs.get(c).name(), counts);
+                totals[c] = totals[c].plus(counts);
+            }
+        }
+        System.out.println("total");
+        for (int c = 0; c < configs.size(); c++) {
+            print("  " + configs.get(c).name(), totals[c]);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+struct B {
+    void x; // invalid field, struct B has no size
+};
+
+struct A {
+    struct B b; // error already reported for struct B
+    struct B bs[2];
+};
+
+void main() {
+}
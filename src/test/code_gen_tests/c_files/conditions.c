@@ -0,0 +1,155 @@
+// Conditions of if and while: each function covers a group of comparisons, printing 1 when it holds and 0 otherwise.
+
+int calls;
+
+// prints v, so that the order in which operands are evaluated shows in the output
+int f(int v) {
+    calls = calls + 1;
+    print_i(v);
+    return v;
+}
+
+void holds(int c) {
+    if (c) {
+        print_c('1');
+    } else {
+        print_c('0');
+    }
+}
+
+void against_zero(int x) {
+    if (x == 0) { holds(1); } else { holds(0); }
+    if (x != 0) { holds(1); } else { holds(0); }
+    if (x < 0) { holds(1); } else { holds(0); }
+    if (x > 0) { holds(1); } else { holds(0); }
+    if (x <= 0) { holds(1); } else { holds(0); }
+    if (x >= 0) { holds(1); } else { holds(0); }
+    print_c(' ');
+}
+
+// 32767 is the largest immediate of slti, and 65535 the largest of xori
+void against_short(int x) {
+    if (x == 100) { holds(1); } else { holds(0); }
+    if (x != 100) { holds(1); } else { holds(0); }
+    if (x < 100) { holds(1); } else { holds(0); }
+    if (x > 100) { holds(1); } else { holds(0); }
+    if (x <= 100) { holds(1); } else { holds(0); }
+    if (x >= 100) { holds(1); } else { holds(0); }
+    print_c('|');
+    if (x < -32768) { holds(1); } else { holds(0); }
+    if (x <= 32766) { holds(1); } else { holds(0); }
+    if (x <= 32767) { holds(1); } else { holds(0); }
+    if (x > 32767) { holds(1); } else { holds(0); }
+    if (x == 65535) { holds(1); } else { holds(0); }
+    if (x != -1) { holds(1); } else { holds(0); }
+    print_c(' ');
+}
+
+void against_long(int x) {
+    if (x == 100000) { holds(1); } else { holds(0); }
+    if (x != 100000) { holds(1); } else { holds(0); }
+    if (x < 100000) { holds(1); } else { holds(0); }
+    if (x > 100000) { holds(1); } else { holds(0); }
+    if (x <= -100000) { holds(1); } else { holds(0); }
+    if (x >= -100000) { holds(1); } else { holds(0); }
+    print_c(' ');
+}
+
+void against_register(int x, int y) {
+    if (x == y) { holds(1); } else { holds(0); }
+    if (x != y) { holds(1); } else { holds(0); }
+    if (x < y) { holds(1); } else { holds(0); }
+    if (x > y) { holds(1); } else { holds(0); }
+    if (x <= y) { holds(1); } else { holds(0); }
+    if (x >= y) { holds(1); } else { holds(0); }
+    print_c(' ');
+}
+
+void literal_on_left(int x) {
+    if (0 == x) { holds(1); } else { holds(0); }
+    if (0 < x) { holds(1); } else { holds(0); }
+    if (100 <= x) { holds(1); } else { holds(0); }
+    if (100 > x) { holds(1); } else { holds(0); }
+    if (100000 >= x) { holds(1); } else { holds(0); }
+    if (-7 != x) { holds(1); } else { holds(0); }
+    print_c(' ');
+}
+
+void short_circuit_if() {
+    calls = 0;
+    if (f(0) && f(1)) { holds(1); } else { holds(0); }
+    if (f(2) && f(3)) { holds(1); } else { holds(0); }
+    if (f(4) || f(5)) { holds(1); } else { holds(0); }
+    if (f(0) || f(0)) { holds(1); } else { holds(0); }
+    print_c(' ');
+    if (f(1) && f(0) || f(6)) { holds(1); } else { holds(0); }
+    if (f(0) || f(7) && f(0)) { holds(1); } else { holds(0); }
+    if (f(8) > 7 && f(9) < 9) { holds(1); } else { holds(0); }
+    if (f(1) == 2 || f(3) >= 3) { holds(1); } else { holds(0); }
+    // no else branch: the condition jumps over the body when it is false
+    if (f(0) || f(1) && f(2) < 100000) {
+        holds(1);
+    }
+    print_c(' ');
+    // f is called 19 times
+    print_i(calls);
+    print_c('\n');
+}
+
+void short_circuit_while() {
+    int i;
+    calls = 0;
+    i = 0;
+    while (i < 5 && f(i) != 3) {
+        i = i + 1;
+    }
+    print_c(' ');
+    i = 0;
+    while (f(i) < 2 || i == 2) {
+        i = i + 1;
+    }
+    print_c(' ');
+    i = 10;
+    while (0 < i && (f(i) > 6 || i == 6)) {
+        i = i - 2;
+    }
+    print_c(' ');
+    // f is called 12 times
+    print_i(calls);
+    print_c('\n');
+}
+
+void main() {
+    against_zero(-1);
+    against_zero(0);
+    against_zero(1);
+    print_c('\n');
+    against_short(99);
+    against_short(100);
+    against_short(101);
+    print_c('\n');
+    against_short(-32769);
+    against_short(32767);
+    against_short(32768);
+    against_short(65535);
+    against_short(-1);
+    print_c('\n');
+    against_long(99999);
+    against_long(100000);
+    against_long(100001);
+    against_long(-100000);
+    against_long(-100001);
+    print_c('\n');
+    against_register(1, 2);
+    against_register(2, 2);
+    against_register(3, 2);
+    against_register(-1, 1);
+    print_c('\n');
+    literal_on_left(0);
+    literal_on_left(100);
+    literal_on_left(100001);
+    literal_on_left(-7);
+    print_c('\n');
+    short_circuit_if();
+    short_circuit_while();
+}
@@ -0,0 +1,170 @@
+// Constant folding and propagation: each function covers a group of rules, and prints its results.
+
+struct pair {
+    int a;
+    char c;
+    int b;
+};
+
+int g;
+int calls;
+
+int f(int x) {
+    calls = calls + 1;
+    return x;
+}
+
+void arithmetic() {
+    print_i(2 * 3 + 1);
+    print_c(' ');
+    print_i(sizeof(struct pair) * 2 + sizeof(int));
+    print_c(' ');
+    print_i(2147483647 - 1 + 1);
+    print_c(' ');
+    print_i(-2147483647 - 1);
+    print_c(' ');
+    print_i(7 / 2 + (0 - 7) / 2 + 7 % (0 - 3) + (0 - 7) % 3);
+    print_c(' ');
+    // multiplication wraps around at run time, so it is folded
+    print_i(65536 * 65536 + 3 * 1000000000);
+    print_c(' ');
+    print_i((1 < 2) + (2 <= 2) + (3 > 4) + (4 >= 5) + (5 == 5) + (5 != 5) + ('a' == 'a') + ('a' != 'b'));
+    print_c(' ');
+    print_i((int) 'A' + 0);
+    print_c('\n');
+}
+
+// + and - trap on overflow at run time, and division by zero is undefined: none of these is folded
+void overflow() {
+    if (g == 1) {
+        print_i(2147483647 + 1);
+        print_i(0 - 2147483647 - 2);
+        print_i((-2147483647 - 1) / -1);
+        print_i(1 / 0);
+        print_i(1 % 0);
+    }
+    print_s((char *) "left to run time\n");
+}
+
+void logic() {
+    calls = 0;
+    print_i(0 && f(1));
+    print_i(1 || f(2));
+    print_i(1 && f(3));
+    print_i(0 || f(0));
+    print_i(f(4) && 0);
+    print_i(f(5) || 1);
+    print_i(f(6) && 1);
+    print_i(g && 0);
+    print_i(g || 1);
+    print_i(g && 1);
+    print_i(0 || g);
+    print_c(' ');
+    // f(3), f(0), f(4), f(5) and f(6) are called
+    print_i(calls);
+    print_c('\n');
+}
+
+void identities(int j) {
+    calls = 0;
+    print_i(j * 1 - 0 + 0 + j + j / 1 + j % 1 + 1 * j);
+    print_c(' ');
+    // the calls are kept although their result is not needed
+    print_i(f(9) * 0 + 0 * f(8) + f(7) % 1);
+    print_c(' ');
+    print_i(calls);
+    print_c('\n');
+}
+
+void branches() {
+    int z;
+    if (1) {
+        print_i(1);
+    } else {
+        print_i(2);
+    }
+    if (0) {
+        print_i(3);
+    }
+    if (0) {
+        print_i(4);
+    } else {
+        print_i(5);
+    }
+    while (0) {
+        print_i(6);
+    }
+    z = 0;
+    while (1) {
+        z = z + 1;
+        if (z > 4)
+            break;
+    }
+    print_i(z);
+    print_c('\n');
+}
+
+int propagation(int x) {
+    int n;
+    int m;
+    char ch;
+    int late;
+    int twice;
+    int looped;
+    int i;
+    int addressed;
+    int *p;
+
+    // n is replaced by 10, which makes m constant in turn
+    n = 10;
+    m = n * 2 + 1;
+    if (m > 20) {
+        print_i(m);
+    } else {
+        print_i(0 - 1);
+    }
+    ch = 'q';
+    print_c(ch);
+
+    // used before its assignment, although only when x is 0
+    if (x == 0) {
+        print_i(late);
+    }
+    late = 5;
+    print_i(late);
+
+    // assigned twice
+    twice = 1;
+    twice = twice + x;
+    print_i(twice);
+
+    // not assigned by a statement of the function body
+    i = 0;
+    while (i < 3) {
+        looped = 3;
+        i = i + 1;
+    }
+    print_i(looped);
+
+    // not promoted to a register, as its address is taken
+    addressed = 8;
+    p = &addressed;
+    *p = *p + 1;
+    print_i(addressed);
+    print_c(' ');
+
+    while (n - 10) {
+        print_i(99);
+    }
+    return x * 1 + 0 + m * 0 + late;
+}
+
+void main() {
+    arithmetic();
+    logic();
+    identities(3);
+    branches();
+    print_i(propagation(7));
+    print_c('\n');
+    overflow();
+}
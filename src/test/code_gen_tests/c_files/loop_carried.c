@@ -0,0 +1,54 @@
+// Variables updated in place inside loops and copied right after, which the peephole optimiser must not fold away.
+
+void increment() {
+    int x;
+    int y;
+    int i;
+    x = 0;
+    i = 0;
+    y = 0;
+    while (i < 5) {
+        x = x + 1;
+        y = x;
+        i = i + 1;
+    }
+    print_i(y);
+}
+
+void triple() {
+    int x;
+    int y;
+    int i;
+    x = 1;
+    i = 0;
+    while (i < 5) {
+        x = x * 3;
+        y = x;
+        x = y - 1;
+        i = i + 1;
+    }
+    print_i(x);
+    print_c(' ');
+    print_i(y);
+}
+
+void count_down() {
+    int i;
+    int y;
+    i = 10;
+    y = 0;
+    while (i != 0) {
+        i = i - 1;
+        y = i;
+    }
+    print_i(y);
+}
+
+void main() {
+    increment();
+    print_c(' ');
+    triple();
+    print_c(' ');
+    count_down();
+    print_c('\n');
+}
@@ -0,0 +1,84 @@
+// Multiplication, division and remainder by constants, over small and extreme dividends of both signs.
+// Prints one hash of the results per constant. The minimum int is not divided by -1, which overflows.
+
+int hash;
+
+void mix(int v) {
+    hash = (hash * 31 + v % 10007) % 1000003;
+}
+
+// the i-th dividend: -1000 to 1093 by steps of 7, then the extremes
+int dividend(int i) {
+    if (i < 300)
+        return -1000 + 7 * i;
+    if (i == 300)
+        return 2147483647;
+    if (i == 301)
+        return -2147483647 - 1;
+    if (i == 302)
+        return -2147483647;
+    if (i == 303)
+        return 2147483646;
+    if (i == 304)
+        return -1;
+    if (i == 305)
+        return 0;
+    return 1;
+}
+
+// mixes x / d, x % d, x * d and d * x for the k-th constant d
+void mix_by(int k, int x) {
+    if (k == 0) { mix(x / 1); mix(x % 1); mix(x * 1); mix(1 * x); }
+    if (k == 1 && x != -2147483647 - 1) { mix(x / -1); mix(x % -1); mix(x * -1); mix(-1 * x); }
+    if (k == 2) { mix(x / 2); mix(x % 2); mix(x * 2); mix(2 * x); }
+    if (k == 3) { mix(x / -2); mix(x % -2); mix(x * -2); mix(-2 * x); }
+    if (k == 4) { mix(x / 3); mix(x % 3); mix(x * 3); mix(3 * x); }
+    if (k == 5) { mix(x / -3); mix(x % -3); mix(x * -3); mix(-3 * x); }
+    if (k == 6) { mix(x / 5); mix(x % 5); mix(x * 5); mix(5 * x); }
+    if (k == 7) { mix(x / -5); mix(x % -5); mix(x * -5); mix(-5 * x); }
+    if (k == 8) { mix(x / 6); mix(x % 6); mix(x * 6); mix(6 * x); }
+    if (k == 9) { mix(x / 7); mix(x % 7); mix(x * 7); mix(7 * x); }
+    if (k == 10) { mix(x / -7); mix(x % -7); mix(x * -7); mix(-7 * x); }
+    if (k == 11) { mix(x / 9); mix(x % 9); mix(x * 9); mix(9 * x); }
+    if (k == 12) { mix(x / 10); mix(x % 10); mix(x * 10); mix(10 * x); }
+    if (k == 13) { mix(x / 11); mix(x % 11); mix(x * 11); mix(11 * x); }
+    if (k == 14) { mix(x / 16); mix(x % 16); mix(x * 16); mix(16 * x); }
+    if (k == 15) { mix(x / -16); mix(x % -16); mix(x * -16); mix(-16 * x); }
+    if (k == 16) { mix(x / 25); mix(x % 25); mix(x * 25); mix(25 * x); }
+    if (k == 17) { mix(x / 100); mix(x % 100); mix(x * 100); mix(100 * x); }
+    if (k == 18) { mix(x / 125); mix(x % 125); mix(x * 125); mix(125 * x); }
+    if (k == 19) { mix(x / -125); mix(x % -125); mix(x * -125); mix(-125 * x); }
+    if (k == 20) { mix(x / 641); mix(x % 641); mix(x * 641); mix(641 * x); }
+    if (k == 21) { mix(x / 1000); mix(x % 1000); mix(x * 1000); mix(1000 * x); }
+    if (k == 22) { mix(x / -1000); mix(x % -1000); mix(x * -1000); mix(-1000 * x); }
+    if (k == 23) { mix(x / 4097); mix(x % 4097); mix(x * 4097); mix(4097 * x); }
+    if (k == 24) { mix(x / 65536); mix(x % 65536); mix(x * 65536); mix(65536 * x); }
+    if (k == 25) { mix(x / -65536); mix(x % -65536); mix(x * -65536); mix(-65536 * x); }
+    if (k == 26) { mix(x / 1073741824); mix(x % 1073741824); mix(x * 1073741824); mix(1073741824 * x); }
+    if (k == 27) { mix(x / -1073741824); mix(x % -1073741824); mix(x * -1073741824); mix(-1073741824 * x); }
+    if (k == 28) { mix(x / 2147483647); mix(x % 2147483647); mix(x * 2147483647); mix(2147483647 * x); }
+    if (k == 29) { mix(x / -2147483647); mix(x % -2147483647); mix(x * -2147483647); mix(-2147483647 * x); }
+    if (k == 30) {
+        mix(x / (-2147483647 - 1));
+        mix(x % (-2147483647 - 1));
+        mix(x * (-2147483647 - 1));
+        mix((-2147483647 - 1) * x);
+    }
+}
+
+void main() {
+    int k;
+    int i;
+    k = 0;
+    while (k < 31) {
+        hash = 0;
+        i = 0;
+        while (i < 307) {
+            mix_by(k, dividend(i));
+            i = i + 1;
+        }
+        print_i(hash);
+        print_c('\n');
+        k = k + 1;
+    }
+}